@@ -0,0 +1,79 @@
+package main;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Build time of the partitioned, parallel and count-based QTSC builds. The
+ * legacy QTSC scans the whole dataset at every node and is left out; its
+ * output matches QTSCPartition.
+ * <p/>
+ * The heap grows linearly with size: a build at 10^7 points fits in 768 MB,
+ * so 10^8 points need about 8 GB and the forks run with -Xmx10g.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 2, jvmArgsAppend = "-Xmx10g")
+public class BuildBenchmark {
+
+    @Param({"uniform", "clustered", "skewed"})
+    public String kind;
+
+    @Param({"10000", "100000", "1000000", "10000000", "100000000"})
+    public int size;
+
+    @Param({"8"})
+    public int height;
+
+    private int[] dataset;
+    private MortonIndex index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataset = SyntheticData.dataset(kind, size, 1);
+        index = new MortonIndex(SyntheticData.XMIN, SyntheticData.YMIN, SyntheticData.W, SyntheticData.H, height, dataset);
+    }
+
+    @Benchmark
+    public QuadTree<String> qtscPartition() {
+        QuadTree<String> tree = SyntheticData.tree();
+        tree.QTSCPartition(tree.getRootNode(), height, SyntheticData.LAMBDA, dataset, SyntheticData.THETA, SyntheticData.SENSITIVE);
+        return tree;
+    }
+
+    @Benchmark
+    public QuadTree<String> qtscParallel() {
+        QuadTree<String> tree = SyntheticData.tree();
+        tree.QTSCParallel(tree.getRootNode(), height, SyntheticData.LAMBDA, dataset, SyntheticData.THETA, SyntheticData.SENSITIVE, 4, 10000,
+                ForkJoinPool.commonPool());
+        return tree;
+    }
+
+    @Benchmark
+    public MortonIndex mortonIndex() {
+        return new MortonIndex(SyntheticData.XMIN, SyntheticData.YMIN, SyntheticData.W, SyntheticData.H, height, dataset);
+    }
+
+    @Benchmark
+    public QuadTree<String> qtscCounts() {
+        QuadTree<String> tree = SyntheticData.tree();
+        tree.QTSCCounts(tree.getRootNode(), height, SyntheticData.LAMBDA, index, SyntheticData.THETA, SyntheticData.SENSITIVE);
+        return tree;
+    }
+}
@@ -0,0 +1,127 @@
+package main;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of one range count on a released tree, over a fixed set of random
+ * rectangles with sides 1/16 of the root. Sample mode reports the latency
+ * percentiles; searchBatch is measured per query over the whole set.
+ * <p/>
+ * Only the setup needs much memory (the dataset and the Morton index the
+ * tree is built from, 512 MB at 10^7 points), hence -Xmx8g for 10^8.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 2, jvmArgsAppend = "-Xmx8g")
+public class QueryBenchmark {
+
+    static final int QUERIES = 100000;
+
+    @Param({"uniform", "clustered", "skewed"})
+    public String kind;
+
+    @Param({"10000", "100000", "1000000", "10000000", "100000000"})
+    public int size;
+
+    @Param({"8"})
+    public int height;
+
+    private QuadTree<String> tree;
+    private LinearQuadTree linear;
+    private PrefixSumIndex prefix;
+    private FrozenTree frozen;
+    private double qw;
+    private double qh;
+    private double[] recs;
+    private double[] count;
+    private double[] noise;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        tree = SyntheticData.released(SyntheticData.dataset(kind, size, 1), height);
+        linear = LinearQuadTree.fromTree(tree);
+        prefix = new PrefixSumIndex(tree, height);
+        frozen = FrozenTree.of(tree);
+        qw = SyntheticData.W / 16;
+        qh = SyntheticData.H / 16;
+        recs = new double[2 * QUERIES];
+        Random random = new Random(1);
+        for (int i = 0; i < QUERIES; i++) {
+            recs[2 * i] = SyntheticData.XMIN + random.nextDouble() * (SyntheticData.W - qw);
+            recs[2 * i + 1] = SyntheticData.YMIN + random.nextDouble() * (SyntheticData.H - qh);
+        }
+        count = new double[QUERIES];
+        noise = new double[QUERIES];
+    }
+
+    //每个线程自己的缓冲区和查询下标
+    @State(Scope.Thread)
+    public static class Cursor {
+        final SearchBuffer<String> buf = new SearchBuffer<String>();
+        final double[] out = new double[2];
+        final double[] rec = new double[2];
+        int i;
+
+        double[] next(double[] recs) {
+            rec[0] = recs[2 * i];
+            rec[1] = recs[2 * i + 1];
+            i = i + 1 == QUERIES ? 0 : i + 1;
+            return rec;
+        }
+    }
+
+    @Benchmark
+    public void search(Cursor c, Blackhole bh) {
+        tree.search(c.next(recs), qw, qh, SyntheticData.SENSITIVE, c.buf, c.out);
+        bh.consume(c.out[0]);
+        bh.consume(c.out[1]);
+    }
+
+    @Benchmark
+    public double rangeCount(Cursor c) {
+        return tree.rangeCount(c.next(recs), qw, qh, c.buf);
+    }
+
+    @Benchmark
+    public double linearCount(Cursor c) {
+        return linear.count(c.next(recs), qw, qh);
+    }
+
+    @Benchmark
+    public double frozenCount(Cursor c) {
+        return frozen.count(c.next(recs), qw, qh);
+    }
+
+    @Benchmark
+    public double prefixSumCount(Cursor c) {
+        return prefix.count(c.next(recs), qw, qh);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OperationsPerInvocation(QUERIES)
+    public void searchBatch(Blackhole bh) {
+        tree.searchBatch(recs, qw, qh, SyntheticData.SENSITIVE, count, noise);
+        bh.consume(count);
+        bh.consume(noise);
+    }
+}
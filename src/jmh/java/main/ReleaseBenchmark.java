@@ -0,0 +1,77 @@
+package main;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Noise and post-processing on a built tree: the pointer-tree release, the
+ * level-ordered FlatTree release, GBLUE, and raw sampling of 2^20 values.
+ * The tree is built in the setup, which at 10^8 points takes about 5 GB of
+ * heap; the forks get 8 GB.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 2, jvmArgsAppend = "-Xmx8g")
+public class ReleaseBenchmark {
+
+    @Param({"uniform", "clustered", "skewed"})
+    public String kind;
+
+    @Param({"10000", "100000", "1000000", "10000000", "100000000"})
+    public int size;
+
+    @Param({"8"})
+    public int height;
+
+    private QuadTree<String> tree;
+    private FlatTree<String> flat;
+    private NoiseSource noise;
+    private double[] samples;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        tree = SyntheticData.released(SyntheticData.dataset(kind, size, 1), height);
+        flat = new FlatTree<String>(tree);
+        noise = new LaplaceNoise(2);
+        samples = new double[1 << 20];
+    }
+
+    @Benchmark
+    public void release() {
+        tree.release(SyntheticData.SENSITIVE);
+    }
+
+    @Benchmark
+    public void flatRelease(Blackhole bh) {
+        flat.release(noise, SyntheticData.SENSITIVE);
+        bh.consume(flat.getNoisyCount(0));
+    }
+
+    @Benchmark
+    public void gblue(Blackhole bh) {
+        flat.gblue();
+        bh.consume(flat.getNoisyCount(0));
+    }
+
+    @Benchmark
+    public double[] fillNoise() {
+        noise.fill(samples, 0, samples.length, 1);
+        return samples;
+    }
+}
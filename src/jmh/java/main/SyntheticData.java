@@ -0,0 +1,75 @@
+package main;
+
+import java.util.Random;
+
+/**
+ * Synthetic datasets and the tree parameters shared by the JMH benchmarks.
+ */
+final class SyntheticData {
+
+    static final double XMIN = 520000;
+    static final double YMIN = 170000;
+    static final double W = 20480;
+    static final double H = 20480;
+    static final double EP = 1;
+    static final double LAMBDA = 1.2;
+    //theta为0.3时聚集的数据在根结点就被判为均匀，树只有一个结点
+    static final double THETA = 0.1;
+    static final double SENSITIVE = 1;
+
+    private SyntheticData() {
+    }
+
+    /**
+     * Generates a dataset in the layout used by Global: index 0 unused, then
+     * x,y pairs inside the benchmark root.
+     *
+     * @param {String} kind uniform, clustered (gaussian clusters) or skewed
+     *                 (density falling off polynomially from one corner).
+     */
+    static int[] dataset(String kind, int n, long seed) {
+        Random random = new Random(seed);
+        int[] dataset = new int[2 * n + 1];
+        double[] cx = new double[16];
+        double[] cy = new double[16];
+        for (int c = 0; c < cx.length; c++) {
+            cx[c] = random.nextDouble() * W;
+            cy[c] = random.nextDouble() * H;
+        }
+        for (int i = 0; i < n; i++) {
+            double x;
+            double y;
+            if (kind.equals("uniform")) {
+                x = random.nextDouble() * W;
+                y = random.nextDouble() * H;
+            } else if (kind.equals("clustered")) {
+                int c = random.nextInt(cx.length);
+                x = cx[c] + random.nextGaussian() * W / 50;
+                y = cy[c] + random.nextGaussian() * H / 50;
+            } else if (kind.equals("skewed")) {
+                x = Math.pow(random.nextDouble(), 4) * W;
+                y = Math.pow(random.nextDouble(), 4) * H;
+            } else {
+                throw new QuadTreeException("Unknown dataset : " + kind);
+            }
+            dataset[2 * i + 1] = (int) (XMIN + Math.min(W - 1, Math.max(0, x)));
+            dataset[2 * i + 2] = (int) (YMIN + Math.min(H - 1, Math.max(0, y)));
+        }
+        return dataset;
+    }
+
+    static QuadTree<String> tree() {
+        QuadTree<String> tree = new QuadTree<String>(EP, XMIN, YMIN, W, H);
+        tree.setNoiseSource(new LaplaceNoise(1));
+        return tree;
+    }
+
+    //只保留计数的已发布的树
+    static QuadTree<String> released(int[] dataset, int height) {
+        QuadTree<String> tree = tree();
+        tree.setCountOnly(true);
+        tree.QTSCCounts(tree.getRootNode(), height, LAMBDA, new MortonIndex(XMIN, YMIN, W, H, height, dataset), THETA, SENSITIVE);
+        tree.release(SENSITIVE);
+        return tree;
+    }
+}
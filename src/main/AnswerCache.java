@@ -0,0 +1,161 @@
+package main;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of noisy range answers, keyed by the normalized rectangle
+ * and the sensitivity. Asking for the same rectangle again returns the same
+ * answer, so a repeated query costs one hash lookup and reveals nothing new.
+ * The least recently used entry is dropped once the cache is full.
+ * <p/>
+ * The answers belong to one release of one tree: clear the cache whenever
+ * the tree or its noisy counts change. All methods are synchronized, so the
+ * cache can be shared by the threads of a batch search. Two threads that
+ * miss the same rectangle at once both compute an answer, but putIfAbsent
+ * keeps only the first and hands it to the second, so every caller sees the
+ * same answer. Lookups reuse one probe key and do not allocate.
+ */
+public class AnswerCache {
+
+    private final int capacity;
+    private final LinkedHashMap<Key, double[]> map;
+    //查找用的键，只在持有锁时修改
+    private final Key probe = new Key();
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param {int} capacity Maximum number of answers kept.
+     */
+    public AnswerCache(final int capacity) {
+        if (capacity <= 0) {
+            throw new QuadTreeException("Cache capacity must be positive : " + capacity);
+        }
+        this.capacity = capacity;
+        this.map = new LinkedHashMap<Key, double[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, double[]> eldest) {
+                if (size() > AnswerCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Copies the cached answer of a rectangle into out.
+     *
+     * @return {boolean} Whether the rectangle was cached.
+     */
+    public synchronized boolean get(double[] rec, double w, double h, double sensitive, double[] out) {
+        double[] answer = map.get(probe.set(rec, w, h, sensitive));
+        if (answer == null) {
+            return false;
+        }
+        hits++;
+        System.arraycopy(answer, 0, out, 0, answer.length);
+        return true;
+    }
+
+    /**
+     * Stores out as the answer of a rectangle unless another thread stored
+     * one first; in that case out is overwritten with the stored answer.
+     *
+     * @param {double[]} out The computed answer, replaced by the cached one if any.
+     * @return {boolean} Whether out was stored.
+     */
+    public synchronized boolean putIfAbsent(double[] rec, double w, double h, double sensitive, double[] out) {
+        double[] answer = map.get(probe.set(rec, w, h, sensitive));
+        if (answer != null) {
+            hits++;
+            System.arraycopy(answer, 0, out, 0, answer.length);
+            return false;
+        }
+        misses++;
+        map.put(new Key().set(rec, w, h, sensitive), out.clone());
+        return true;
+    }
+
+    public synchronized void clear() {
+        map.clear();
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    //算出并存入缓存的答案数；同时算出同一范围的线程只有第一个计入
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    //命中率，没有查询时为0
+    public synchronized double getHitRate() {
+        return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+    }
+
+    //规范化的矩形：宽高取正，-0.0与0.0视为相同；放进表里的键不再修改
+    private static final class Key {
+        private double x;
+        private double y;
+        private double w;
+        private double h;
+        private double sensitive;
+
+        Key set(double[] rec, double w, double h, double sensitive) {
+            double x = rec[0];
+            double y = rec[1];
+            if (w < 0) {
+                x += w;
+                w = -w;
+            }
+            if (h < 0) {
+                y += h;
+                h = -h;
+            }
+            this.x = x + 0.0;
+            this.y = y + 0.0;
+            this.w = w + 0.0;
+            this.h = h + 0.0;
+            this.sensitive = sensitive + 0.0;
+            return this;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return Double.doubleToLongBits(x) == Double.doubleToLongBits(k.x) && Double.doubleToLongBits(y) == Double.doubleToLongBits(k.y)
+                    && Double.doubleToLongBits(w) == Double.doubleToLongBits(k.w) && Double.doubleToLongBits(h) == Double.doubleToLongBits(k.h)
+                    && Double.doubleToLongBits(sensitive) == Double.doubleToLongBits(k.sensitive);
+        }
+
+        @Override
+        public int hashCode() {
+            long bits = Double.doubleToLongBits(x);
+            bits = 31 * bits + Double.doubleToLongBits(y);
+            bits = 31 * bits + Double.doubleToLongBits(w);
+            bits = 31 * bits + Double.doubleToLongBits(h);
+            bits = 31 * bits + Double.doubleToLongBits(sensitive);
+            return (int) (bits ^ (bits >>> 32));
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package main;
+
+/**
+ * True counts of the cells of a complete quadtree over the root. Level d cuts
+ * the root into 2^d x 2^d cells; i grows with x and j with y.
+ */
+public interface CellCounts {
+    public int getCount(int d, int i, int j);
+
+    /**
+     * @return {int} The deepest level that can be asked for.
+     */
+    public int getHeight();
+}
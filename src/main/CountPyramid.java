@@ -0,0 +1,97 @@
+package main;
+
+/**
+ * True point counts of every cell of a complete quadtree, built once from a
+ * dataset. Level d cuts the root into 2^d x 2^d cells and stores their
+ * counts row by row, so the count of any node a private tree can contain is
+ * a single array read. The counts do not depend on epsilon, theta or lambda,
+ * so one pyramid serves every parameter setting of a sweep.
+ * <p/>
+ * A point goes to cell floor((x - xmin) / cellWidth) of the finest level,
+ * which matches the node bounds of the builds when the root size is a power
+ * of two multiple of the cell size.
+ */
+public class CountPyramid implements CellCounts {
+
+    private final double xmin;
+    private final double ymin;
+    private final double w;
+    private final double h;
+    private final int height;
+    private final int[][] levels;
+
+    /**
+     * @param {double} xmin Minimum x of the root.
+     * @param {double} ymin Minimum y of the root.
+     * @param {double} w Width of the root.
+     * @param {double} h Height of the root.
+     * @param {int} height Deepest level to count.
+     * @param {int[]} dataset The points, x,y pairs from index 1.
+     */
+    public CountPyramid(double xmin, double ymin, double w, double h, int height, int[] dataset) {
+        if (height < 0 || height > 15) {
+            throw new QuadTreeException("Pyramid height out of range : " + height);
+        }
+        this.xmin = xmin;
+        this.ymin = ymin;
+        this.w = w;
+        this.h = h;
+        this.height = height;
+        this.levels = new int[height + 1][];
+        int n = 1 << height;
+        int[] finest = new int[n * n];
+        double cellW = w / n;
+        double cellH = h / n;
+        for (int i = 1; i < dataset.length - 1; i += 2) {
+            int x = dataset[i];
+            int y = dataset[i + 1];
+            if (x >= xmin && x < xmin + w && y >= ymin && y < ymin + h) {
+                int cx = Math.min(n - 1, (int) ((x - xmin) / cellW));
+                int cy = Math.min(n - 1, (int) ((y - ymin) / cellH));
+                finest[cy * n + cx]++;
+            }
+        }
+        levels[height] = finest;
+        for (int d = height - 1; d >= 0; d--) {
+            int m = 1 << d;
+            int[] fine = levels[d + 1];
+            int[] coarse = new int[m * m];
+            for (int j = 0; j < m; j++) {
+                for (int i = 0; i < m; i++) {
+                    coarse[j * m + i] = fine[2 * j * 2 * m + 2 * i] + fine[2 * j * 2 * m + 2 * i + 1]
+                            + fine[(2 * j + 1) * 2 * m + 2 * i] + fine[(2 * j + 1) * 2 * m + 2 * i + 1];
+                }
+            }
+            levels[d] = coarse;
+        }
+    }
+
+    /**
+     * @return {int} The count of cell (i, j) of level d; i grows with x and j with y.
+     */
+    @Override
+    public int getCount(int d, int i, int j) {
+        return levels[d][(j << d) + i];
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    public double getXmin() {
+        return xmin;
+    }
+
+    public double getYmin() {
+        return ymin;
+    }
+
+    public double getW() {
+        return w;
+    }
+
+    public double getH() {
+        return h;
+    }
+}
@@ -0,0 +1,138 @@
+package main;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Loads coordinate files into the int[] dataset used by Global,
+ * Node.collect and the QTSC builds: index 0 is unused and the points follow
+ * as x,y pairs from index 1.
+ * <p/>
+ * Text files are tab separated, and their first value is skipped just like
+ * the split-based loader in main. Binary files hold the points as
+ * little-endian int32 x,y pairs with no header. Both formats are read through
+ * memory-mapped chunks without building intermediate Strings.
+ */
+public class DatasetLoader {
+
+    private static final long CHUNK = 1 << 30;
+
+    /**
+     * Loads a binary file if its name ends with ".bin", a text file otherwise.
+     */
+    public static int[] load(File file) throws IOException {
+        return file.getName().endsWith(".bin") ? loadBinary(file) : loadText(file);
+    }
+
+    public static int[] loadText(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            //先数一遍有多少个数，结果数组只分配一次，不用扩容和复制
+            long tokens = parse(channel, size, file, null);
+            if (tokens > Integer.MAX_VALUE - 8) {
+                throw new QuadTreeException("Dataset too large");
+            }
+            int[] dataset = new int[(int) Math.max(1, tokens)];
+            parse(channel, size, file, dataset);
+            return dataset;
+        } finally {
+            raf.close();
+        }
+    }
+
+    //扫描文件的前size个字节，返回数的个数；out不为null时第k个数(k>0)存到out[k]，第0个数不保存
+    private static long parse(FileChannel channel, long size, File file, int[] out) throws IOException {
+        long token = 0;
+        long value = 0;
+        boolean negative = false;
+        boolean inToken = false;
+        for (long pos = 0; pos < size; pos += CHUNK) {
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(CHUNK, size - pos));
+            while (buf.hasRemaining()) {
+                byte b = buf.get();
+                if (b >= '0' && b <= '9') {
+                    value = value * 10 + (b - '0');
+                    if (value > (negative ? Integer.MAX_VALUE + 1L : Integer.MAX_VALUE)) {
+                        throw new IOException("Integer out of range at byte " + (pos + buf.position() - 1) + " : " + file);
+                    }
+                    inToken = true;
+                } else if (b == '-' && !inToken) {
+                    negative = true;
+                    inToken = true;
+                } else if (b != '\t' && b != '\n' && b != '\r' && b != ' ') {
+                    throw new IOException("Not an integer at byte " + (pos + buf.position() - 1) + " : " + file);
+                } else if (inToken) {
+                    if (out != null && token > 0) {
+                        out[(int) token] = (int) (negative ? -value : value);
+                    }
+                    token++;
+                    value = 0;
+                    negative = false;
+                    inToken = false;
+                }
+            }
+        }
+        if (inToken) {
+            if (out != null && token > 0) {
+                out[(int) token] = (int) (negative ? -value : value);
+            }
+            token++;
+        }
+        return token;
+    }
+
+    public static int[] loadBinary(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            if (size % 8 != 0 || size / 4 + 1 > Integer.MAX_VALUE - 8) {
+                throw new IOException("Not a binary dataset : " + file);
+            }
+            int[] dataset = new int[(int) (size / 4) + 1];
+            int n = 1;
+            for (long pos = 0; pos < size; pos += CHUNK) {
+                MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(CHUNK, size - pos));
+                buf.order(ByteOrder.LITTLE_ENDIAN);
+                IntBuffer ints = buf.asIntBuffer();
+                int len = ints.remaining();
+                ints.get(dataset, n, len);
+                n += len;
+            }
+            return dataset;
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Writes the points of a dataset in the binary format.
+     */
+    public static void writeBinary(int[] dataset, File file) throws IOException {
+        int points = (dataset.length - 1) / 2;
+        long size = 8L * points;
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(size);
+            FileChannel channel = raf.getChannel();
+            int n = 1;
+            for (long pos = 0; pos < size; pos += CHUNK) {
+                MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_WRITE, pos, Math.min(CHUNK, size - pos));
+                buf.order(ByteOrder.LITTLE_ENDIAN);
+                IntBuffer ints = buf.asIntBuffer();
+                int len = ints.remaining();
+                ints.put(dataset, n, len);
+                n += len;
+            }
+        } finally {
+            raf.close();
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package main;
+
+/**
+ * Exact point counts of arbitrary rectangles, built once from a dataset and
+ * used as the ground truth when measuring the error of private answers.
+ * <p/>
+ * The bounding box of the points is cut into a g x g grid with a few points
+ * per cell. The grid keeps a summed-area table of the cell counts and the
+ * points themselves grouped by cell. A query takes the cells strictly
+ * between the cells of its corners from the table in O(1) and tests only the
+ * points of the ring of cells its boundary crosses, so the cost grows with
+ * the perimeter of the query and never with the number of points inside it.
+ * <p/>
+ * Rectangles are half-open like the node bounds: a point (x, y) is inside
+ * when x0 <= x < x0 + w and y0 <= y < y0 + h.
+ */
+public class ExactOracle {
+
+    //每个格子平均的点数，以及格子数的上限
+    private static final int PER_CELL = 8;
+    private static final int MAX_GRID = 2048;
+
+    private final double xmin;
+    private final double ymin;
+    private final double cellW;
+    private final double cellH;
+    private final int g;
+    //sum[j*(g+1)+i]为前j行、前i列格子的点数
+    private final int[] sum;
+    //格子c(=j*g+i)的点为xy[2*start[c]..2*start[c+1])，x,y交替
+    private final int[] start;
+    private final int[] xy;
+
+    /**
+     * @param {int[]} dataset The points, x,y pairs from index 1.
+     */
+    public ExactOracle(int[] dataset) {
+        int n = (dataset.length - 1) / 2;
+        double x0 = 0;
+        double y0 = 0;
+        double x1 = 1;
+        double y1 = 1;
+        if (n > 0) {
+            x0 = x1 = dataset[1];
+            y0 = y1 = dataset[2];
+            for (int i = 3; i < 2 * n + 1; i += 2) {
+                x0 = Math.min(x0, dataset[i]);
+                x1 = Math.max(x1, dataset[i]);
+                y0 = Math.min(y0, dataset[i + 1]);
+                y1 = Math.max(y1, dataset[i + 1]);
+            }
+        }
+        this.g = Math.max(1, Math.min(MAX_GRID, (int) Math.ceil(Math.sqrt((double) n / PER_CELL))));
+        this.xmin = x0;
+        this.ymin = y0;
+        //最大的坐标也要落在最后一个格子里
+        this.cellW = (x1 - x0 + 1) / g;
+        this.cellH = (y1 - y0 + 1) / g;
+        int[] cell = new int[n];
+        this.start = new int[g * g + 1];
+        for (int k = 0; k < n; k++) {
+            cell[k] = row(dataset[2 * k + 2]) * g + col(dataset[2 * k + 1]);
+            start[cell[k] + 1]++;
+        }
+        int m = g + 1;
+        this.sum = new int[m * m];
+        for (int j = 0; j < g; j++) {
+            int r = 0;
+            for (int i = 0; i < g; i++) {
+                r += start[j * g + i + 1];
+                sum[(j + 1) * m + i + 1] = sum[j * m + i + 1] + r;
+            }
+        }
+        for (int c = 0; c < g * g; c++) {
+            start[c + 1] += start[c];
+        }
+        //按格子分桶，next为每个格子下一个空位
+        this.xy = new int[2 * n];
+        int[] next = new int[g * g];
+        System.arraycopy(start, 0, next, 0, g * g);
+        for (int k = 0; k < n; k++) {
+            int p = next[cell[k]]++;
+            xy[2 * p] = dataset[2 * k + 1];
+            xy[2 * p + 1] = dataset[2 * k + 2];
+        }
+    }
+
+    //坐标所在的列、行，范围外的坐标归到边上的格子；单调，所以列号比查询左边的列号大的点一定在左边界右侧
+    private int col(double x) {
+        double c = Math.floor((x - xmin) / cellW);
+        return c < 0 ? 0 : (c >= g ? g - 1 : (int) c);
+    }
+
+    private int row(double y) {
+        double r = Math.floor((y - ymin) / cellH);
+        return r < 0 ? 0 : (r >= g ? g - 1 : (int) r);
+    }
+
+    /**
+     * The exact number of points in a rectangle.
+     *
+     * @param {double[]} rec Lower corner of the rectangle.
+     * @param {double} w Width of the rectangle.
+     * @param {double} h Height of the rectangle.
+     */
+    public int count(double[] rec, double w, double h) {
+        double x0 = rec[0];
+        double y0 = rec[1];
+        if (w < 0) {
+            x0 += w;
+            w = -w;
+        }
+        if (h < 0) {
+            y0 += h;
+            h = -h;
+        }
+        return count(x0, y0, x0 + w, y0 + h);
+    }
+
+    /**
+     * The exact number of points with x0 <= x < x1 and y0 <= y < y1.
+     */
+    public int count(double x0, double y0, double x1, double y1) {
+        if (!(x0 < x1) || !(y0 < y1) || xy.length == 0) {
+            return 0;
+        }
+        int ca = col(x0);
+        int cb = col(x1);
+        int ra = row(y0);
+        int rb = row(y1);
+        int count = 0;
+        //四角所在格子之间的格子完全在范围内，直接用前缀和
+        if (cb - ca > 1 && rb - ra > 1) {
+            int m = g + 1;
+            count = sum[rb * m + cb] - sum[(ra + 1) * m + cb] - sum[rb * m + ca + 1] + sum[(ra + 1) * m + ca + 1];
+        }
+        //边界上的格子逐点判断：上下两行，以及中间各行的左右两列
+        for (int i = ca; i <= cb; i++) {
+            count += scan(ra * g + i, x0, y0, x1, y1);
+            if (rb != ra) {
+                count += scan(rb * g + i, x0, y0, x1, y1);
+            }
+        }
+        for (int j = ra + 1; j < rb; j++) {
+            count += scan(j * g + ca, x0, y0, x1, y1);
+            if (cb != ca) {
+                count += scan(j * g + cb, x0, y0, x1, y1);
+            }
+        }
+        return count;
+    }
+
+    private int scan(int c, double x0, double y0, double x1, double y1) {
+        int count = 0;
+        for (int p = 2 * start[c]; p < 2 * start[c + 1]; p += 2) {
+            int x = xy[p];
+            int y = xy[p + 1];
+            if (x >= x0 && x < x1 && y >= y0 && y < y1) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    //点的总数
+    public int size() {
+        return xy.length / 2;
+    }
+
+    public int getGrid() {
+        return g;
+    }
+}
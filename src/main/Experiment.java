@@ -0,0 +1,196 @@
+package main;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Runs the query error experiment once, without a display. The parameters
+ * come from a properties file (see experiment.properties); any key that is
+ * missing falls back to the values the Swing demo has always used. The built
+ * tree and the error array are kept after the first run, so asking again does
+ * not rebuild anything. With the metrics key set, the build and query
+ * counters of the run are written to that file as JSON.
+ * <p/>
+ * The relative error compares the answer of the released tree
+ * (QuadTree.rangeCount over the released noisy counts) with the exact
+ * number of points in the query rectangle, taken from an ExactOracle over
+ * the raw dataset rather than from the tree that is being measured. The
+ * answers are post-processing of the release, so asking for the same
+ * rectangle again gives the same answer without a cache.
+ * <p/>
+ * Usage: java main.Experiment [config.properties]
+ */
+public class Experiment {
+
+    private final Properties config;
+    private Global global;
+    private QuadTree<String> tree;
+    private double[] error;
+
+    public Experiment(Properties config) {
+        this.config = config;
+    }
+
+    public static Experiment load(File file) throws IOException {
+        Properties config = new Properties();
+        if (file != null && file.exists()) {
+            InputStream in = new FileInputStream(file);
+            try {
+                config.load(in);
+            } finally {
+                in.close();
+            }
+        }
+        return new Experiment(config);
+    }
+
+    /**
+     * Loads the data, builds and releases the tree and computes the mean
+     * relative error of each query size. Only the first call does the work.
+     *
+     * @return {double[]} Mean relative error for query sizes 1..sizes cells.
+     */
+    public synchronized double[] run() throws IOException {
+        if (this.error != null) {
+            return this.error;
+        }
+        int[] dataset = DatasetLoader.load(new File(config.getProperty("data", "eastwe.txt")));
+        //xmin,ymin,w,h,treeh,ep,sensitive,theta,lambda,a,dataset
+        this.global = new Global(getDouble("xmin", 520000), getDouble("ymin", 170000), getDouble("w", 20480),
+                getDouble("h", 20480), getInt("treeH", 2), getDouble("ep", 1), getDouble("sensitive", 1),
+                getDouble("theta", 0.5), getDouble("lambda", 2), getDouble("a", 1), dataset);
+        //构建树
+        QuadTree<String> tree = new QuadTree<String>(global.getEp1(), global.getXmin(), global.getYmin(), global.getW(), global.getH());
+        if (config.getProperty("seed") != null) {
+            tree.setNoiseSource(new LaplaceNoise(Long.parseLong(config.getProperty("seed").trim())));
+        }
+        String metrics = config.getProperty("metrics");
+        if (metrics != null) {
+            tree.setMetrics(new Metrics());
+        }
+        tree.QTSCPartition(tree.getRootNode(), global.getTreeH(), global.getLambda(), dataset, global.getTheta(), global.getSensitive());
+        release(tree, global);
+        double[] error = evaluate(tree, global, getInt("queries", 10), getInt("sizes", 5), getDouble("row", 100), getDouble("total", 2000));
+        if (metrics != null) {
+            Writer out = new OutputStreamWriter(new FileOutputStream(metrics.trim()), "UTF-8");
+            try {
+                tree.getMetrics().writeJson(out);
+            } finally {
+                out.close();
+            }
+        }
+        this.tree = tree;
+        this.error = error;
+        return error;
+    }
+
+    /**
+     * Releases a tree built with e1 = a*ep. When a < 1 the second stage runs
+     * on top: merge and re-noise with e2 = (1-a)*ep, then GBLUE
+     * post-processing.
+     *
+     * @param {QuadTree} tree The built tree.
+     * @param {Global} global The parameters the tree was built with.
+     */
+    public static void release(QuadTree<String> tree, Global global) {
+        tree.release(global.getSensitive());
+        if (global.getA() < 1) {
+            tree.mergeAndRenoise(global.getA(), global.getTheta(), global.getSensitive());
+            tree.gblue();
+        }
+    }
+
+    /**
+     * Mean relative error of random grid-aligned queries of 1..sizes cells.
+     *
+     * @param {QuadTree} tree The released tree.
+     * @param {Global} global The parameters the tree was built with.
+     * @param {int} queries Number of queries per size.
+     * @param {int} sizes Number of query sizes.
+     * @param {double} row The row argument of Global.re.
+     * @param {double} total The count argument of Global.re.
+     */
+    public static double[] evaluate(QuadTree<String> tree, Global global, int queries, int sizes, double row, double total) {
+        return evaluate(tree, global, new ExactOracle(global.getData()), queries, sizes, row, total);
+    }
+
+    /**
+     * Same as above with an oracle built beforehand, so that several trees
+     * over the same dataset share it.
+     *
+     * @param {ExactOracle} oracle Exact counts of the dataset of global.
+     */
+    public static double[] evaluate(QuadTree<String> tree, Global global, ExactOracle oracle, int queries, int sizes, double row, double total) {
+        double[] error = new double[sizes];
+        SearchBuffer<String> buf = new SearchBuffer<String>();
+        //在不同的查询范围中循环
+        for (int k = 0; k < error.length; k++) {
+            double queryw = (k + 1) * global.getQueryw();
+            double queryh = (k + 1) * global.getQueryh();
+            //生成查询区域
+            List<double[]> recs = tree.query(queries, global.getXmin(), global.getYmin(), queryw, queryh, global.getW(), global.getH());
+            double sum = 0;
+            for (int j = 0; j < queries; j++) {
+                //发布的树的回答与真实点数之差，参数，真实结果，总值
+                double real = oracle.count(recs.get(j), queryw, queryh);
+                sum += global.re(tree.rangeCount(recs.get(j), queryw, queryh, buf) - real, row, real, total);
+            }
+            error[k] = sum / queries;
+        }
+        return error;
+    }
+
+    public double[] getError() {
+        return error;
+    }
+
+    public QuadTree<String> getTree() {
+        return tree;
+    }
+
+    public Global getGlobal() {
+        return global;
+    }
+
+    //把结果写成制表符分隔的表：查询边长(格子数)，平均相对误差
+    public void write(PrintWriter out) {
+        out.println("size\terror");
+        for (int k = 0; k < error.length; k++) {
+            out.println((k + 1) + "\t" + error[k]);
+        }
+        out.flush();
+    }
+
+    private double getDouble(String key, double def) {
+        String value = config.getProperty(key);
+        return value == null ? def : Double.parseDouble(value.trim());
+    }
+
+    private int getInt(String key, int def) {
+        String value = config.getProperty(key);
+        return value == null ? def : Integer.parseInt(value.trim());
+    }
+
+    public static void main(String[] args) throws IOException {
+        Experiment experiment = load(new File(args.length > 0 ? args[0] : "experiment.properties"));
+        experiment.run();
+        String output = experiment.config.getProperty("output");
+        if (output != null) {
+            PrintWriter out = new PrintWriter(output, "UTF-8");
+            try {
+                experiment.write(out);
+            } finally {
+                out.close();
+            }
+        }
+        experiment.write(new PrintWriter(System.out));
+    }
+}
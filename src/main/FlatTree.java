@@ -0,0 +1,202 @@
+package main;
+
+import java.util.Arrays;
+
+/**
+ * A built tree laid out breadth-first in flat arrays indexed by node id. The
+ * root has id 0 and the four children of a node (nw, ne, sw, se) have
+ * consecutive ids starting at firstChild, so every child has a larger id than
+ * its parent. Nodes of the same depth form the contiguous id range
+ * [getLevelStart(d), getLevelStart(d+1)), which lets a whole level be noised
+ * in one loop.
+ */
+public class FlatTree<T> {
+
+    private final Node<T>[] nodes;
+    private final int[] firstChild;
+    private final double[] ep;
+    private final double[] noisy;
+    private final int[] count;
+    private final int[] levelStart;
+    private final int size;
+    private final QuadTree<T> tree;
+    private boolean released;
+
+    /**
+     * Flattens a tree. The noisy counts are taken from the nodes, so the tree
+     * should have been released first.
+     *
+     * @param {QuadTree} tree The tree to flatten.
+     */
+    public FlatTree(QuadTree<T> tree) {
+        this.size = count(tree.getRootNode());
+        this.tree = tree;
+        this.released = tree.isReleased();
+        @SuppressWarnings("unchecked")
+        Node<T>[] nodes = (Node<T>[]) new Node<?>[size];
+        this.nodes = nodes;
+        this.firstChild = new int[size];
+        this.ep = new double[size];
+        this.noisy = new double[size];
+        this.count = new int[size];
+        //nodes数组本身就是广度优先遍历的队列，当前层结束时下一层正好是[i,tail)
+        int[] starts = new int[65];
+        int levels = 1;
+        int end = 1;
+        nodes[0] = tree.getRootNode();
+        int tail = 1;
+        for (int i = 0; i < size; i++) {
+            if (i == end) {
+                starts[levels++] = i;
+                end = tail;
+            }
+            Node<T> node = nodes[i];
+            ep[i] = node.getEp();
+            count[i] = node.getCount();
+            noisy[i] = node.getNoisyCount();
+            if (node.getNodeType() == NodeType.POINTER) {
+                firstChild[i] = tail;
+                nodes[tail++] = node.getNw();
+                nodes[tail++] = node.getNe();
+                nodes[tail++] = node.getSw();
+                nodes[tail++] = node.getSe();
+            } else {
+                firstChild[i] = -1;
+            }
+        }
+        starts[levels] = size;
+        this.levelStart = Arrays.copyOf(starts, levels + 1);
+    }
+
+    private static <T> int count(Node<T> node) {
+        if (node.getNodeType() != NodeType.POINTER) {
+            return 1;
+        }
+        return 1 + count(node.getNw()) + count(node.getNe()) + count(node.getSw()) + count(node.getSe());
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Node<T> getNode(int id) {
+        return nodes[id];
+    }
+
+    public int getFirstChild(int id) {
+        return firstChild[id];
+    }
+
+    public double getEp(int id) {
+        return ep[id];
+    }
+
+    public double getNoisyCount(int id) {
+        return noisy[id];
+    }
+
+    public int getCount(int id) {
+        return count[id];
+    }
+
+    /**
+     * @return {int} The number of levels, the root being level 0.
+     */
+    public int getLevels() {
+        return levelStart.length - 1;
+    }
+
+    public int getLevelStart(int level) {
+        return levelStart[level];
+    }
+
+    /**
+     * Sets every noisy count to the true count plus Laplace noise at the
+     * node's epsilon, a level at a time. The samples of a level are drawn in
+     * one batch from the noise source with scale 1, then scaled by
+     * sensitive / ep and added in a single loop over the level's ids, which
+     * the JIT can vectorize.
+     *
+     * @param {NoiseSource} noise Where the samples come from.
+     * @param {double} sensitive Sensitivity of the counts.
+     */
+    public void release(NoiseSource noise, double sensitive) {
+        int width = 0;
+        for (int d = 0; d < getLevels(); d++) {
+            width = Math.max(width, levelStart[d + 1] - levelStart[d]);
+        }
+        double[] sample = new double[width];
+        for (int d = 0; d < getLevels(); d++) {
+            int from = levelStart[d];
+            int n = levelStart[d + 1] - from;
+            noise.fill(sample, 0, n, 1);
+            addNoise(noisy, count, ep, sample, from, n, sensitive);
+        }
+        released = true;
+    }
+
+    //噪声计数来自发布过的树，或者调用过release
+    public boolean isReleased() {
+        return released;
+    }
+
+    //noisy=count+Lap(0, sensitive/ep)：尺度为1的样本乘以sensitive/ep
+    private static void addNoise(double[] noisy, int[] count, double[] ep, double[] sample, int from, int n, double sensitive) {
+        for (int k = 0; k < n; k++) {
+            noisy[from + k] = count[from + k] + sensitive / ep[from + k] * sample[k];
+        }
+    }
+
+    /**
+     * GBLUE post-processing: replaces the noisy counts with the weighted least
+     * squares estimate in which every parent equals the sum of its children.
+     * A node's own count is weighted by its epsilon squared, the inverse of
+     * its noise variance up to a constant.
+     * <p/>
+     * The bottom-up pass merges each node's own count with the sum of its
+     * children's estimates. The top-down pass then spreads the difference
+     * between a parent and its children over the children in proportion to
+     * their variance. Both passes are a single loop over the ids and use two
+     * scratch arrays.
+     */
+    public void gblue() {
+        double[] z = new double[size];
+        double[] var = new double[size];
+        for (int i = size - 1; i >= 0; i--) {
+            double v = 1 / (ep[i] * ep[i]);
+            int c = firstChild[i];
+            if (c < 0) {
+                z[i] = noisy[i];
+                var[i] = v;
+            } else {
+                double cz = z[c] + z[c + 1] + z[c + 2] + z[c + 3];
+                double cv = var[c] + var[c + 1] + var[c + 2] + var[c + 3];
+                z[i] = (noisy[i] / v + cz / cv) / (1 / v + 1 / cv);
+                var[i] = 1 / (1 / v + 1 / cv);
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            int c = firstChild[i];
+            if (c >= 0) {
+                double diff = z[i] - (z[c] + z[c + 1] + z[c + 2] + z[c + 3]);
+                double cv = var[c] + var[c + 1] + var[c + 2] + var[c + 3];
+                for (int k = c; k < c + 4; k++) {
+                    z[k] += diff * var[k] / cv;
+                }
+            }
+            noisy[i] = z[i];
+        }
+    }
+
+    /**
+     * Writes the flat noisy counts back to the tree's nodes.
+     */
+    public void apply() {
+        for (int i = 0; i < size; i++) {
+            nodes[i].setNoisyCount(noisy[i]);
+        }
+        if (released) {
+            tree.markReleased();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package main;
+
+/**
+ * Immutable heap snapshot of a released tree. It copies the structure,
+ * epsilons and noisy counts into final arrays when it is made and never
+ * changes afterwards, so any number of threads can query it without locks
+ * while the QuadTree it came from keeps changing.
+ */
+public final class FrozenTree extends ReleasedTree {
+
+    private final int[] firstChild;
+    private final double[] ep;
+    private final double[] noisy;
+
+    private FrozenTree(int size, int levels, double xmin, double ymin, double w, double h, int[] firstChild, double[] ep, double[] noisy) {
+        super(size, levels, xmin, ymin, w, h);
+        this.firstChild = firstChild;
+        this.ep = ep;
+        this.noisy = noisy;
+    }
+
+    /**
+     * Freezes a tree. The noisy counts are taken from the nodes, so the tree
+     * must have been released (release or mergeAndRenoise) since its last
+     * change.
+     *
+     * @throws QuadTreeException If the tree has not been released.
+     */
+    public static <T> FrozenTree of(QuadTree<T> tree) {
+        return of(new FlatTree<T>(tree));
+    }
+
+    public static <T> FrozenTree of(FlatTree<T> flat) {
+        //没有发布过的树噪声计数全是0，冻结后每个查询都会回答0
+        if (!flat.isReleased()) {
+            throw new QuadTreeException("Tree has not been released");
+        }
+        int n = flat.size();
+        int[] firstChild = new int[n];
+        double[] ep = new double[n];
+        double[] noisy = new double[n];
+        for (int i = 0; i < n; i++) {
+            firstChild[i] = flat.getFirstChild(i);
+            ep[i] = flat.getEp(i);
+            noisy[i] = flat.getNoisyCount(i);
+        }
+        Node<T> root = flat.getNode(0);
+        return new FrozenTree(n, flat.getLevels(), root.getX(), root.getY(), root.getW(), root.getH(), firstChild, ep, noisy);
+    }
+
+    //把映射文件中的快照复制到堆上
+    public static FrozenTree of(ReleasedTree tree) {
+        int n = tree.size();
+        int[] firstChild = new int[n];
+        double[] ep = new double[n];
+        double[] noisy = new double[n];
+        for (int i = 0; i < n; i++) {
+            firstChild[i] = tree.getFirstChild(i);
+            ep[i] = tree.getEp(i);
+            noisy[i] = tree.getNoisyCount(i);
+        }
+        return new FrozenTree(n, tree.getLevels(), tree.getXmin(), tree.getYmin(), tree.getW(), tree.getH(), firstChild, ep, noisy);
+    }
+
+    @Override
+    public int getFirstChild(int i) {
+        return firstChild[i];
+    }
+
+    @Override
+    public double getEp(int i) {
+        return ep[i];
+    }
+
+    @Override
+    public double getNoisyCount(int i) {
+        return noisy[i];
+    }
+}
@@ -16,7 +16,16 @@ public class Global {
 	private int treeH;
 	private double sensitive;
 	private double queryw;
+	private double a;
 	public Global(double xmin, double ymin, double w, double h, int treeH, double ep,double sensitive, double theta,double lambda, int[] dataset){
+		this(xmin,ymin,w,h,treeH,ep,sensitive,theta,lambda,1,dataset);
+	}
+	//a为隐私预算分配参数：第一阶段建树用e1=a*ep，合并后重新加噪用e2=(1-a)*ep；a=1时没有第二阶段
+	public Global(double xmin, double ymin, double w, double h, int treeH, double ep,double sensitive, double theta,double lambda, double a, int[] dataset){
+		if(a<=0 || a>1){
+			throw new QuadTreeException("a must be in (0, 1] : "+a);
+		}
+		this.a=a;
 		this.xmin=xmin;
 		this.ymin=ymin;
 		this.w=w;
@@ -50,6 +59,15 @@ public class Global {
 	public double getEp(){
 		return this.ep;
 	}
+	public double getA(){
+		return this.a;
+	}
+	public double getEp1(){
+		return this.a*this.ep;
+	}
+	public double getEp2(){
+		return (1-this.a)*this.ep;
+	}
 	public double getSensitive(){
 		return this.sensitive;
 	}
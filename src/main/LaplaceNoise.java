@@ -0,0 +1,77 @@
+package main;
+
+import java.util.SplittableRandom;
+
+/**
+ * Seeded Laplace noise. Keyed samples are derived from the seed and the node
+ * key only. Unkeyed samples come from a SplittableRandom per thread, split off
+ * the seeded root the first time a thread asks, so there is no shared state
+ * on the sampling path.
+ */
+public class LaplaceNoise implements NoiseSource {
+
+    //没有设置噪声源时使用的默认噪声
+    public static final LaplaceNoise DEFAULT = new LaplaceNoise();
+
+    private final long seed;
+    private final SplittableRandom root;
+    private final ThreadLocal<SplittableRandom> local = new ThreadLocal<SplittableRandom>() {
+        @Override
+        protected SplittableRandom initialValue() {
+            synchronized (root) {
+                return root.split();
+            }
+        }
+    };
+
+    /**
+     * @param {long} seed Seed of the noise sequence.
+     */
+    public LaplaceNoise(long seed) {
+        this.seed = seed;
+        this.root = new SplittableRandom(seed);
+    }
+
+    public LaplaceNoise() {
+        this(new SplittableRandom().nextLong());
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    @Override
+    public double getNoise(long key, double scale) {
+        double randomDouble = toDouble(mix(seed + key * 0x9E3779B97F4A7C15L)) - 0.5;
+        return laplace(randomDouble, scale);
+    }
+
+    @Override
+    public double getNoise(double scale) {
+        return laplace(local.get().nextDouble() - 0.5, scale);
+    }
+
+    @Override
+    public void fill(double[] out, int from, int to, double scale) {
+        SplittableRandom random = local.get();
+        for (int i = from; i < to; i++) {
+            out[i] = laplace(random.nextDouble() - 0.5, scale);
+        }
+    }
+
+    //把[-0.5,0.5)的均匀随机数变换成均值为0、尺度为scale的拉普拉斯噪声
+    static double laplace(double randomDouble, double scale) {
+        return -scale * Math.signum(randomDouble) * Math.log(1 - 2 * Math.abs(randomDouble));
+    }
+
+    //splitmix64的混合函数
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    static double toDouble(long z) {
+        return (z >>> 11) * 0x1.0p-53;
+    }
+}
@@ -0,0 +1,277 @@
+package main;
+
+import java.util.Arrays;
+
+/**
+ * Pointerless form of the private tree. A node is identified by its level and
+ * the Morton code of its cell at that level; its bounds are derived from the
+ * code and the root bounds instead of being stored. Nodes are kept in preorder
+ * with children in nw, ne, sw, se order, which is the order of their Morton
+ * keys, so every subtree is a contiguous range and next[i] is the first index
+ * after the subtree of node i. Counts, epsilons and noisy counts are parallel
+ * primitive arrays, so searches are forward scans that skip whole subtrees.
+ * <p/>
+ * The noise key of a node is (1 << 2*level) | code, the same quad key the
+ * QuadTree builds use, so with the same seeded noise source both forms make
+ * the same tree and release the same counts.
+ */
+public class LinearQuadTree {
+
+    private final double xmin;
+    private final double ymin;
+    private final double w;
+    private final double h;
+    private NoiseSource noise;
+    private int size;
+    private int maxLevel;
+    private long[] code;
+    private byte[] level;
+    private int[] count;
+    private double[] ep;
+    private double[] noisy;
+    private int[] next;
+
+    private LinearQuadTree(double xmin, double ymin, double w, double h, int capacity) {
+        this.xmin = xmin;
+        this.ymin = ymin;
+        this.w = w;
+        this.h = h;
+        this.code = new long[capacity];
+        this.level = new byte[capacity];
+        this.count = new int[capacity];
+        this.ep = new double[capacity];
+        this.noisy = new double[capacity];
+        this.next = new int[capacity];
+    }
+
+    /**
+     * Converts a built tree, keeping its counts, epsilons and noisy counts.
+     */
+    public static <T> LinearQuadTree fromTree(QuadTree<T> tree) {
+        Node<T> root = tree.getRootNode();
+        LinearQuadTree linear = new LinearQuadTree(root.getX(), root.getY(), root.getW(), root.getH(), 16);
+        linear.noise = tree.getNoiseSource();
+        linear.copy(root, 0, 0L);
+        linear.trim();
+        return linear;
+    }
+
+    private <T> void copy(Node<T> node, int l, long c) {
+        int i = add(c, l, node.getCount(), node.getEp());
+        noisy[i] = node.getNoisyCount();
+        if (node.getNodeType() == NodeType.POINTER) {
+            copy(node.getNw(), l + 1, 4 * c);
+            copy(node.getNe(), l + 1, 4 * c + 1);
+            copy(node.getSw(), l + 1, 4 * c + 2);
+            copy(node.getSe(), l + 1, 4 * c + 3);
+        }
+        next[i] = size;
+    }
+
+    /**
+     * Builds the private tree directly in linear form, with the same split
+     * rule and in-place partitioning as QuadTree.QTSCPartition.
+     *
+     * @param {double} ep Epsilon of the root.
+     * @param {NoiseSource} noise The noise source, or null for the default noise.
+     */
+    public static LinearQuadTree QTSC(double ep, double xmin, double ymin, double w, double h, int height,
+            double lambda, int[] dataset, double theta, double sensitive, NoiseSource noise) {
+        LinearQuadTree linear = new LinearQuadTree(xmin, ymin, w, h, 16);
+        linear.noise = noise;
+        int[] xy = new Node<Object>(ep, xmin, ymin, w, h, null).collect(dataset);
+        linear.build(xy, 0, xy.length / 2, 0, 0L, height, ep, lambda, theta, sensitive);
+        linear.trim();
+        return linear;
+    }
+
+    private void build(int[] xy, int lo, int hi, int l, long c, int height, double nodeEp, double lambda, double theta, double sensitive) {
+        int i = add(c, l, hi - lo, nodeEp);
+        if (l < height) {
+            double cw = w / (1L << l);
+            double ch = h / (1L << l);
+            double x = xmin + Morton.decodeX(c) * cw;
+            double y = ymin + Morton.decodeY(c) * ch;
+            int mid = QuadTree.partition(xy, lo, hi, 1, y + ch / 2);
+            int b1 = QuadTree.partition(xy, lo, mid, 0, x + cw / 2);
+            int b3 = QuadTree.partition(xy, mid, hi, 0, x + cw / 2);
+            double childEp = nodeEp * lambda;
+            double n = noise(key(l, c), sensitive / childEp, sensitive);
+            if (!Node.uniform(hi - lo, b1 - lo, mid - b1, b3 - mid, hi - b3, n, theta)) {
+                build(xy, lo, b1, l + 1, 4 * c, height, childEp, lambda, theta, sensitive);
+                build(xy, b1, mid, l + 1, 4 * c + 1, height, childEp, lambda, theta, sensitive);
+                build(xy, mid, b3, l + 1, 4 * c + 2, height, childEp, lambda, theta, sensitive);
+                build(xy, b3, hi, l + 1, 4 * c + 3, height, childEp, lambda, theta, sensitive);
+            }
+        }
+        next[i] = size;
+    }
+
+    private int add(long c, int l, int n, double nodeEp) {
+        if (size == code.length) {
+            int grown = 2 * size;
+            code = Arrays.copyOf(code, grown);
+            level = Arrays.copyOf(level, grown);
+            count = Arrays.copyOf(count, grown);
+            ep = Arrays.copyOf(ep, grown);
+            noisy = Arrays.copyOf(noisy, grown);
+            next = Arrays.copyOf(next, grown);
+        }
+        code[size] = c;
+        level[size] = (byte) l;
+        count[size] = n;
+        ep[size] = nodeEp;
+        maxLevel = Math.max(maxLevel, l);
+        return size++;
+    }
+
+    private void trim() {
+        code = Arrays.copyOf(code, size);
+        level = Arrays.copyOf(level, size);
+        count = Arrays.copyOf(count, size);
+        ep = Arrays.copyOf(ep, size);
+        noisy = Arrays.copyOf(noisy, size);
+        next = Arrays.copyOf(next, size);
+    }
+
+    static long key(int l, long c) {
+        return (1L << (2 * l)) | c;
+    }
+
+    private double noise(long key, double param, double sentive) {
+        return noise == null ? Node.getNoise(param, sentive) : param + noise.getNoise(key, sentive);
+    }
+
+    //给每个结点的真实计数加上Lap(0,sensitive/ep)的噪声，编号与QuadTree.release相同
+    public void release(double sensitive) {
+        for (int i = 0; i < size; i++) {
+            long key = -key(level[i], code[i]);
+            double scale = sensitive / ep[i];
+            noisy[i] = count[i] + (noise == null ? LaplaceNoise.DEFAULT.getNoise(scale) : noise.getNoise(key, scale));
+        }
+    }
+
+    /**
+     * Same as QuadTree.search for one rectangle: out[0] is the true count and
+     * out[1] the fresh noise of the leaves nodeSearch accepts.
+     */
+    public void search(double[] rec, double w, double h, double sensitive, double[] out) {
+        double sum = 0;
+        double noiseSum = 0;
+        int i = 0;
+        while (i < size) {
+            double cw = this.w / (1L << level[i]);
+            double ch = this.h / (1L << level[i]);
+            double x = xmin + Morton.decodeX(code[i]) * cw;
+            double y = ymin + Morton.decodeY(code[i]) * ch;
+            if (!QuadTree.overlaps(x, y, cw, ch, rec, w, h)) {
+                i = next[i];
+            } else {
+                if (next[i] == i + 1 && QuadTree.nodeSearch(x, y, cw, ch, rec, w, h)) {
+                    sum += count[i];
+                    noiseSum += noise == null ? Node.getNoise(sensitive / ep[i], sensitive) : sensitive / ep[i] + noise.getNoise(sensitive);
+                }
+                i++;
+            }
+        }
+        out[0] = sum;
+        out[1] = noiseSum;
+    }
+
+    //nodeSearch接受的叶子的噪声计数之和
+    public double count(double[] rec, double w, double h) {
+        double sum = 0;
+        int i = 0;
+        while (i < size) {
+            double cw = this.w / (1L << level[i]);
+            double ch = this.h / (1L << level[i]);
+            double x = xmin + Morton.decodeX(code[i]) * cw;
+            double y = ymin + Morton.decodeY(code[i]) * ch;
+            if (!QuadTree.overlaps(x, y, cw, ch, rec, w, h)) {
+                i = next[i];
+            } else {
+                if (next[i] == i + 1 && QuadTree.nodeSearch(x, y, cw, ch, rec, w, h)) {
+                    sum += noisy[i];
+                }
+                i++;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Finds a node by its level and Morton code with a binary search over the
+     * preorder, which is sorted by (code << 2*(maxLevel-level), level).
+     *
+     * @return {int} The index of the node, or -1 if the tree has no such node.
+     */
+    public int indexOf(long c, int l) {
+        long target = c << (2 * (maxLevel - l));
+        int lo = 0;
+        int hi = size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long k = code[mid] << (2 * (maxLevel - level[mid]));
+            if (k < target || (k == target && level[mid] < l)) {
+                lo = mid + 1;
+            } else if (k > target || level[mid] > l) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isLeaf(int i) {
+        return next[i] == i + 1;
+    }
+
+    public int getNext(int i) {
+        return next[i];
+    }
+
+    public long getCode(int i) {
+        return code[i];
+    }
+
+    public int getLevel(int i) {
+        return level[i];
+    }
+
+    public int getCount(int i) {
+        return count[i];
+    }
+
+    public double getEp(int i) {
+        return ep[i];
+    }
+
+    public double getNoisyCount(int i) {
+        return noisy[i];
+    }
+
+    public double getX(int i) {
+        return xmin + Morton.decodeX(code[i]) * (w / (1L << level[i]));
+    }
+
+    public double getY(int i) {
+        return ymin + Morton.decodeY(code[i]) * (h / (1L << level[i]));
+    }
+
+    public double getW(int i) {
+        return w / (1L << level[i]);
+    }
+
+    public double getH(int i) {
+        return h / (1L << level[i]);
+    }
+
+    public void setNoiseSource(NoiseSource noise) {
+        this.noise = noise;
+    }
+}
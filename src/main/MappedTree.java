@@ -0,0 +1,121 @@
+package main;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A released tree stored in a file and queried directly off the memory
+ * mapping. Opening only maps the file and checks the header, so it costs
+ * the same for any tree size, and processes that open the same file share
+ * its pages through the page cache.
+ * <p/>
+ * The file is little-endian: a 64-byte header (magic "QTSC", version, node
+ * count, level count, then the root bounds xmin, ymin, w, h as doubles and
+ * 16 reserved bytes) followed by one 24-byte record per node in the
+ * breadth-first order of FlatTree (int first child or -1 for a leaf, int
+ * level, double epsilon, double noisy count). Node bounds are not stored,
+ * count derives them on the way down. Only released values are written,
+ * never the true counts or the points.
+ */
+public class MappedTree extends ReleasedTree {
+
+    public static final int MAGIC = 0x43535451;
+    public static final int VERSION = 1;
+    static final int HEADER = 64;
+    static final int RECORD = 24;
+
+    private final ByteBuffer buf;
+
+    private MappedTree(ByteBuffer buf) throws IOException {
+        super(buf.getInt(8), buf.getInt(12), buf.getDouble(16), buf.getDouble(24), buf.getDouble(32), buf.getDouble(40));
+        this.buf = buf;
+        if (buf.getInt(0) != MAGIC) {
+            throw new IOException("Not a tree snapshot");
+        }
+        if (buf.getInt(4) != VERSION) {
+            throw new IOException("Unsupported snapshot version : " + buf.getInt(4));
+        }
+        if (buf.capacity() != HEADER + (long) RECORD * size) {
+            throw new IOException("Truncated snapshot : " + size + " nodes in " + buf.capacity() + " bytes");
+        }
+    }
+
+    /**
+     * Maps a snapshot file read-only.
+     */
+    public static MappedTree open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot too large to map : " + file);
+            }
+            if (channel.size() < HEADER) {
+                throw new IOException("Not a tree snapshot : " + file);
+            }
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            return new MappedTree(buf);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Writes the structure, epsilons and noisy counts of a released tree.
+     */
+    public static <T> void write(QuadTree<T> tree, File file) throws IOException {
+        write(new FlatTree<T>(tree), file);
+    }
+
+    public static <T> void write(FlatTree<T> flat, File file) throws IOException {
+        Node<T> root = flat.getNode(0);
+        long length = HEADER + (long) RECORD * flat.size();
+        if (length > Integer.MAX_VALUE) {
+            throw new QuadTreeException("Tree too large for a snapshot : " + flat.size() + " nodes");
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(length);
+            MappedByteBuffer buf = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            buf.putInt(MAGIC).putInt(VERSION).putInt(flat.size()).putInt(flat.getLevels());
+            buf.putDouble(root.getX()).putDouble(root.getY()).putDouble(root.getW()).putDouble(root.getH());
+            buf.putLong(0).putLong(0);
+            int level = 0;
+            for (int i = 0; i < flat.size(); i++) {
+                while (i >= flat.getLevelStart(level + 1)) {
+                    level++;
+                }
+                buf.putInt(flat.getFirstChild(i)).putInt(level).putDouble(flat.getEp(i)).putDouble(flat.getNoisyCount(i));
+            }
+            buf.force();
+        } finally {
+            raf.close();
+        }
+    }
+
+    @Override
+    public int getFirstChild(int i) {
+        return buf.getInt(HEADER + RECORD * i);
+    }
+
+    public int getLevel(int i) {
+        return buf.getInt(HEADER + RECORD * i + 4);
+    }
+
+    @Override
+    public double getEp(int i) {
+        return buf.getDouble(HEADER + RECORD * i + 8);
+    }
+
+    @Override
+    public double getNoisyCount(int i) {
+        return buf.getDouble(HEADER + RECORD * i + 16);
+    }
+}
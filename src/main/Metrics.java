@@ -0,0 +1,262 @@
+package main;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for the build and query paths of a QuadTree. Attach an instance
+ * with QuadTree.setMetrics; without one the tree only pays a null check per
+ * node and per query. All counters are thread safe, so parallel builds and
+ * batch searches can share one instance.
+ * <p/>
+ * Levels are counted from the root (level 0). The time of a level is the
+ * wall time spent on the nodes of that level themselves (counting, trial
+ * split and child creation, not their subtrees), summed over the nodes and
+ * over the threads that built them.
+ */
+public class Metrics {
+
+    public static final int MAX_LEVELS = 32;
+
+    private final AtomicLongArray levelNanos = new AtomicLongArray(MAX_LEVELS);
+    private final AtomicLongArray levelNodes = new AtomicLongArray(MAX_LEVELS);
+    private final LongAdder nodesCreated = new LongAdder();
+    private final LongAdder trialSplits = new LongAdder();
+    private final LongAdder splitsRejected = new LongAdder();
+    private final LongAdder pointsScanned = new LongAdder();
+    private final LongAdder noiseSamples = new LongAdder();
+    private final LongAdder builds = new LongAdder();
+    private final LongAdder buildNanos = new LongAdder();
+    private final LongAdder buildBytes = new LongAdder();
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder leavesVisited = new LongAdder();
+    private final AtomicLong maxLeavesVisited = new AtomicLong();
+    //第b格为访问了[2^(b-1),2^b)个叶子的查询数，第0格为没有访问叶子的查询数
+    private final AtomicLongArray leavesHistogram = new AtomicLongArray(33);
+    //rangeCount按结点计数，内部结点和被剪掉的结点都算，和search的叶子数分开统计
+    private final LongAdder rangeQueries = new LongAdder();
+    private final LongAdder nodesVisited = new LongAdder();
+    private final AtomicLong maxNodesVisited = new AtomicLong();
+
+    //记录一个结点的耗时，结点所在层由depth给出
+    public void node(int depth, long nanos) {
+        int l = Math.min(depth, MAX_LEVELS - 1);
+        levelNanos.addAndGet(l, nanos);
+        levelNodes.incrementAndGet(l);
+    }
+
+    public void nodesCreated(int n) {
+        nodesCreated.add(n);
+    }
+
+    //记录一次试分裂，rejected为真表示子区域足够均匀，结点保持为叶子
+    public void trialSplit(boolean rejected) {
+        trialSplits.increment();
+        if (rejected) {
+            splitsRejected.increment();
+        }
+    }
+
+    public void pointsScanned(long n) {
+        pointsScanned.add(n);
+    }
+
+    public void noiseSamples(long n) {
+        noiseSamples.add(n);
+    }
+
+    //记录一次完整构建的耗时和构建线程分配的字节数(bytes为负表示JVM不支持统计)
+    public void build(long nanos, long bytes) {
+        builds.increment();
+        buildNanos.add(nanos);
+        if (bytes > 0) {
+            buildBytes.add(bytes);
+        }
+    }
+
+    //记录一次查询访问的叶子数
+    public void query(int leaves) {
+        queries.increment();
+        leavesVisited.add(leaves);
+        leavesHistogram.incrementAndGet(32 - Integer.numberOfLeadingZeros(leaves));
+        long max = maxLeavesVisited.get();
+        while (leaves > max && !maxLeavesVisited.compareAndSet(max, leaves)) {
+            max = maxLeavesVisited.get();
+        }
+    }
+
+    //记录一次rangeCount访问的结点数
+    public void rangeQuery(int nodes) {
+        rangeQueries.increment();
+        nodesVisited.add(nodes);
+        long max = maxNodesVisited.get();
+        while (nodes > max && !maxNodesVisited.compareAndSet(max, nodes)) {
+            max = maxNodesVisited.get();
+        }
+    }
+
+    public long getLevelNanos(int level) {
+        return levelNanos.get(level);
+    }
+
+    public long getLevelNodes(int level) {
+        return levelNodes.get(level);
+    }
+
+    //有结点的层数
+    public int getLevels() {
+        int n = MAX_LEVELS;
+        while (n > 0 && levelNodes.get(n - 1) == 0) {
+            n--;
+        }
+        return n;
+    }
+
+    public long getNodesCreated() {
+        return nodesCreated.sum();
+    }
+
+    public long getTrialSplits() {
+        return trialSplits.sum();
+    }
+
+    public long getSplitsRejected() {
+        return splitsRejected.sum();
+    }
+
+    public long getPointsScanned() {
+        return pointsScanned.sum();
+    }
+
+    public long getNoiseSamples() {
+        return noiseSamples.sum();
+    }
+
+    public long getBuilds() {
+        return builds.sum();
+    }
+
+    public long getBuildNanos() {
+        return buildNanos.sum();
+    }
+
+    public long getBuildBytes() {
+        return buildBytes.sum();
+    }
+
+    public long getQueries() {
+        return queries.sum();
+    }
+
+    public long getLeavesVisited() {
+        return leavesVisited.sum();
+    }
+
+    public long getMaxLeavesVisited() {
+        return maxLeavesVisited.get();
+    }
+
+    public long getRangeQueries() {
+        return rangeQueries.sum();
+    }
+
+    public long getNodesVisited() {
+        return nodesVisited.sum();
+    }
+
+    public long getMaxNodesVisited() {
+        return maxNodesVisited.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < MAX_LEVELS; i++) {
+            levelNanos.set(i, 0);
+            levelNodes.set(i, 0);
+        }
+        for (int i = 0; i < leavesHistogram.length(); i++) {
+            leavesHistogram.set(i, 0);
+        }
+        nodesCreated.reset();
+        trialSplits.reset();
+        splitsRejected.reset();
+        pointsScanned.reset();
+        noiseSamples.reset();
+        builds.reset();
+        buildNanos.reset();
+        buildBytes.reset();
+        queries.reset();
+        leavesVisited.reset();
+        maxLeavesVisited.set(0);
+        rangeQueries.reset();
+        nodesVisited.reset();
+        maxNodesVisited.set(0);
+    }
+
+    /**
+     * Writes the counters as one JSON object. leavesHistogram[b] is the
+     * number of queries that visited between 2^(b-1) and 2^b - 1 leaves
+     * (b = 0: no leaf); trailing empty buckets are left out. Both count only
+     * search queries; rangeCount queries are reported separately as
+     * rangeQueries and nodesVisited, which includes internal and pruned nodes.
+     */
+    public void writeJson(Writer out) throws IOException {
+        out.write(toJson());
+        out.flush();
+    }
+
+    public String toJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\n  \"levels\": [");
+        int levels = getLevels();
+        for (int l = 0; l < levels; l++) {
+            sb.append(l == 0 ? "\n" : ",\n");
+            sb.append("    {\"level\": ").append(l).append(", \"nodes\": ").append(levelNodes.get(l))
+                    .append(", \"nanos\": ").append(levelNanos.get(l)).append("}");
+        }
+        sb.append(levels == 0 ? "],\n" : "\n  ],\n");
+        field(sb, "nodesCreated", getNodesCreated());
+        field(sb, "trialSplits", getTrialSplits());
+        field(sb, "splitsRejected", getSplitsRejected());
+        field(sb, "pointsScanned", getPointsScanned());
+        field(sb, "noiseSamples", getNoiseSamples());
+        field(sb, "builds", getBuilds());
+        field(sb, "buildNanos", getBuildNanos());
+        field(sb, "buildBytes", getBuildBytes());
+        field(sb, "queries", getQueries());
+        field(sb, "leavesVisited", getLeavesVisited());
+        field(sb, "maxLeavesVisited", getMaxLeavesVisited());
+        field(sb, "rangeQueries", getRangeQueries());
+        field(sb, "nodesVisited", getNodesVisited());
+        field(sb, "maxNodesVisited", getMaxNodesVisited());
+        int buckets = leavesHistogram.length();
+        while (buckets > 0 && leavesHistogram.get(buckets - 1) == 0) {
+            buckets--;
+        }
+        sb.append("  \"leavesHistogram\": [");
+        for (int b = 0; b < buckets; b++) {
+            if (b > 0) {
+                sb.append(", ");
+            }
+            sb.append(leavesHistogram.get(b));
+        }
+        sb.append("]\n}\n");
+        return sb.toString();
+    }
+
+    private static void field(StringBuilder sb, String name, long value) {
+        sb.append("  \"").append(name).append("\": ").append(value).append(",\n");
+    }
+
+    //当前线程已分配的字节数，JVM不支持时返回-1
+    public static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,42 @@
+package main;
+
+/**
+ * Morton (Z-order) codes of quadtree cells. The x index goes to the even bits
+ * and the y index to the odd bits, so the four children of a cell, in the
+ * order nw, ne, sw, se, are codes 4*code+0..3 and a subtree is a contiguous
+ * code range. Indices may use up to 31 bits each.
+ */
+public class Morton {
+
+    public static long encode(int x, int y) {
+        return spread(x) | (spread(y) << 1);
+    }
+
+    public static int decodeX(long code) {
+        return compact(code);
+    }
+
+    public static int decodeY(long code) {
+        return compact(code >>> 1);
+    }
+
+    private static long spread(int v) {
+        long x = v & 0xFFFFFFFFL;
+        x = (x | (x << 16)) & 0x0000FFFF0000FFFFL;
+        x = (x | (x << 8)) & 0x00FF00FF00FF00FFL;
+        x = (x | (x << 4)) & 0x0F0F0F0F0F0F0F0FL;
+        x = (x | (x << 2)) & 0x3333333333333333L;
+        x = (x | (x << 1)) & 0x5555555555555555L;
+        return x;
+    }
+
+    private static int compact(long x) {
+        x &= 0x5555555555555555L;
+        x = (x | (x >>> 1)) & 0x3333333333333333L;
+        x = (x | (x >>> 2)) & 0x0F0F0F0F0F0F0F0FL;
+        x = (x | (x >>> 4)) & 0x00FF00FF00FF00FFL;
+        x = (x | (x >>> 8)) & 0x0000FFFF0000FFFFL;
+        x = (x | (x >>> 16)) & 0x00000000FFFFFFFFL;
+        return (int) x;
+    }
+}
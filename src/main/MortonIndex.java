@@ -0,0 +1,119 @@
+package main;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * The points of a dataset sorted by the Morton code of their cell at the
+ * finest level. After the sort every quadtree cell is a contiguous range of
+ * points, so its true count is two binary searches and its points can be
+ * read without testing any bounds.
+ * <p/>
+ * A point goes to cell floor((x - xmin) / cellWidth) of the finest level, as
+ * in CountPyramid. The height is limited to 15 so that a code and a point
+ * index fit together in one long for the sort.
+ */
+public class MortonIndex implements CellCounts {
+
+    private final int height;
+    private final long[] codes;
+    private final int[] xy;
+
+    /**
+     * Sorts the points of the dataset that lie inside the root, in parallel.
+     *
+     * @param {double} xmin Minimum x of the root.
+     * @param {double} ymin Minimum y of the root.
+     * @param {double} w Width of the root.
+     * @param {double} h Height of the root.
+     * @param {int} height Finest level.
+     * @param {int[]} dataset The points, x,y pairs from index 1.
+     */
+    public MortonIndex(double xmin, double ymin, double w, double h, final int height, int[] dataset) {
+        if (height < 0 || height > 15) {
+            throw new QuadTreeException("Index height out of range : " + height);
+        }
+        this.height = height;
+        final int[] in = new Node<Object>(1, xmin, ymin, w, h, null).collect(dataset);
+        final int n = in.length / 2;
+        final int cells = 1 << height;
+        final double cellW = w / cells;
+        final double cellH = h / cells;
+        final double x0 = xmin;
+        final double y0 = ymin;
+        //高位是Morton码，低32位是点的下标，排序后再按下标取出坐标
+        final long[] keys = new long[n];
+        IntStream.range(0, n).parallel().forEach(new IntConsumer() {
+            @Override
+            public void accept(int k) {
+                int cx = Math.min(cells - 1, (int) ((in[2 * k] - x0) / cellW));
+                int cy = Math.min(cells - 1, (int) ((in[2 * k + 1] - y0) / cellH));
+                keys[k] = (Morton.encode(cx, cy) << 32) | k;
+            }
+        });
+        Arrays.parallelSort(keys);
+        this.codes = new long[n];
+        this.xy = new int[2 * n];
+        IntStream.range(0, n).parallel().forEach(new IntConsumer() {
+            @Override
+            public void accept(int k) {
+                int p = (int) keys[k];
+                codes[k] = keys[k] >>> 32;
+                xy[2 * k] = in[2 * p];
+                xy[2 * k + 1] = in[2 * p + 1];
+            }
+        });
+    }
+
+    /**
+     * @return {int} Index of the first point of cell (i, j) of level d.
+     */
+    public int getStart(int d, int i, int j) {
+        return lowerBound(Morton.encode(i, j) << (2 * (height - d)));
+    }
+
+    /**
+     * @return {int} Index after the last point of cell (i, j) of level d.
+     */
+    public int getEnd(int d, int i, int j) {
+        return lowerBound((Morton.encode(i, j) + 1) << (2 * (height - d)));
+    }
+
+    @Override
+    public int getCount(int d, int i, int j) {
+        return getEnd(d, i, j) - getStart(d, i, j);
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    public int size() {
+        return codes.length;
+    }
+
+    public int getPointX(int k) {
+        return xy[2 * k];
+    }
+
+    public int getPointY(int k) {
+        return xy[2 * k + 1];
+    }
+
+    //第一个不小于code的位置
+    private int lowerBound(long code) {
+        int lo = 0;
+        int hi = codes.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (codes[mid] < code) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
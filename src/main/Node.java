@@ -1,6 +1,5 @@
 package main;
 import java.util.Arrays;
-import java.util.Random;
 
 public class Node<T> {
 
@@ -10,7 +9,15 @@ public class Node<T> {
     private double h;
     private double ep;
     private Node<T> opt_parent;
-    private Point<T>[] point;
+    //点坐标按x,y交错存放：coords是结点自己的缓冲区，shared是构建时共享数组中从offset开始的一段
+    private double[] coords;
+    private int[] shared;
+    private int offset;
+    //点的值，与点一一对应；没有设置过值时为null，这时点的值为结点的隐私预算
+    private double[] values;
+    private int count;
+    private double noisyCount;
+    private int evaluatedCount;
     private NodeType nodetype = NodeType.EMPTY;
     private Node<T> nw;
     private Node<T> ne;
@@ -82,38 +89,112 @@ public class Node<T> {
     }
 
     public void setPoint(Point<T>[] point) {
-        int str1Length = point.length;
-        if(this.point==null){
-        	this.point=point;
-        }else{
-            int str2length = this.point.length;
-        	this.point = Arrays.copyOf(this.point, str1Length+str2length);//数组扩容
-            System.arraycopy(point, 0, this.point, str2length, str1Length);
+        if(point==null){
+        	this.coords=null;
+        	this.values=null;
+        	this.shared=null;
+        	this.count=0;
+        	return;
         }
+        for(int i=0;i<point.length;i++){
+        	addPoint(point[i].getX(),point[i].getY(),point[i].getValue());
+        }
+    }
+    public void addPoint(double x, double y){
+    	addPoint(x,y,this.ep);
     }
-    public void deletePoint(double x, double y){
-    	for(int i =0;i<this.point.length;i++){
-    		if(this.point[i].getX()==x && this.point[i].getY()==y){
-    			remove(this.point,point[i]);
+    //追加一个点，缓冲区按两倍扩容；值与结点的隐私预算不同时才分配values
+    public void addPoint(double x, double y, double value){
+    	if(this.shared!=null){
+    		double[] own=new double[Math.max(8,4*this.count)];
+    		for(int i=0;i<2*this.count;i++){
+    			own[i]=this.shared[2*this.offset+i];
     		}
+    		this.coords=own;
+    		this.shared=null;
+    	}else if(this.coords==null){
+    		this.coords=new double[8];
+    	}else if(2*this.count==this.coords.length){
+    		this.coords=Arrays.copyOf(this.coords,2*this.coords.length);//数组扩容
     	}
+    	this.coords[2*this.count]=x;
+    	this.coords[2*this.count+1]=y;
+    	if(this.values!=null || value!=this.ep){
+    		if(this.values==null){
+    			this.values=new double[this.coords.length/2];
+    			Arrays.fill(this.values,0,this.count,this.ep);
+    		}else if(this.values.length<this.coords.length/2){
+    			this.values=Arrays.copyOf(this.values,this.coords.length/2);
+    		}
+    		this.values[this.count]=value;
+    	}
+    	this.count++;
+    }
+    //让结点直接引用共享数组xy中[from,to)的点，不复制
+    public void setPoints(int[] xy, int from, int to){
+    	this.coords=null;
+    	this.values=null;
+    	this.shared=to>from?xy:null;
+    	this.offset=from;
+    	this.count=to-from;
+    }
+    public double getPointX(int i){
+    	return this.shared!=null?this.shared[2*(this.offset+i)]:this.coords[2*i];
+    }
+    public double getPointY(int i){
+    	return this.shared!=null?this.shared[2*(this.offset+i)+1]:this.coords[2*i+1];
+    }
+    public double getPointValue(int i){
+    	return this.values==null?this.ep:this.values[i];
+    }
+    //坐标为(x,y)的第一个点的下标，没有时为-1
+    public int indexOf(double x, double y){
+    	if(!hasPoints()){
+    		return -1;
+    	}
+    	for(int i=0;i<this.count;i++){
+    		if(getPointX(i)==x && getPointY(i)==y){
+    			return i;
+    		}
+    	}
+    	return -1;
+    }
+    //删除一个坐标为(x,y)的点，返回是否找到
+    public boolean deletePoint(double x, double y){
+    	int i=indexOf(x,y);
+    	if(i<0){
+    		return false;
+    	}
+    	remove(i);
+    	return true;
+    }
+    //删除第i个点，后面的点前移；共享数组中的点先复制到自己的缓冲区
+    private void remove(int i) {
+    	if(this.shared!=null){
+    		double[] own=new double[Math.max(8,2*this.count)];
+    		for(int k=0;k<2*this.count;k++){
+    			own[k]=this.shared[2*this.offset+k];
+    		}
+    		this.coords=own;
+    		this.shared=null;
+    	}
+    	System.arraycopy(this.coords,2*i+2,this.coords,2*i,2*(this.count-i-1));
+    	if(this.values!=null){
+    		System.arraycopy(this.values,i+1,this.values,i,this.count-i-1);
+    	}
+    	this.count--;
     }
-    private void remove(Point<T>[] arr, Point num) {
-        Point<T>[] tmp = new Point[arr.length - 1];
-        int idx = 0;
-        boolean hasRemove = false;
-        for (int i = 0; i < arr.length; i++) {
- 
-            if (!hasRemove && arr[i] == num) {
-                hasRemove = true;
-                continue;
-            }
-            tmp[idx++] = arr[i];
-        }
-     }
 
+	//按需生成点对象
 	public Point<T>[] getPoint() {
-        return this.point;
+		if(!hasPoints()){
+			return null;
+		}
+		Point<T>[] point=new Point[this.count];
+		for(int i=0;i<this.count;i++){
+			point[i]=new Point<T>(getPointX(i),getPointY(i),getPointValue(i));
+		}
+        return point;
     }
 
     public void setNodeType(NodeType nodetype) {
@@ -156,61 +237,70 @@ public class Node<T> {
     public Node<T> getSe() {
         return se;
     }
+    //结点是否保存了点坐标(只保留计数时为false)
+    public boolean hasPoints(){
+    	return this.count>0 && (this.coords!=null || this.shared!=null);
+    }
     public int getCount(){
-    	if(this.getPoint()!=null){
-    		return this.getPoint().length;
-    	}
-    	else{
-    		return 0;
-    	}
+    	return this.count;
     }
-	public <T> boolean even(Node<T> node,double lambda, QuadTree<T> tree, int[]dataset,double theta,double sensitive){
-		double x = node.getX();
-        double y = node.getY();
-        double hw = node.getW() / 2;
-        double hh = node.getH() / 2;
-        
-		Node<T> nw= new Node<T>(node.getEp()*lambda, x, y, hw, hh, node);
-		Node<T> ne= new Node<T>(node.getEp()*lambda, x + hw, y, hw, hh, node);
-        Node<T> sw= new Node<T>(node.getEp()*lambda, x, y + hh, hw, hh, node);
-        Node<T> se= new Node<T>(node.getEp()*lambda, x + hw, y + hh, hw, hh, node);
-        Node<T>[] children= new Node[]{nw,ne,sw,se};
-        double to=0;
-        double fp=0;
-        for (int i=0;i<4;i++){
-        	insert(tree, children[i], dataset);
-        	to+=children[i].getPoint()==null?0:children[i].getPoint().length;
-        }
-        double ave= to/4+getNoise(sensitive/nw.getEp(),sensitive);
-        for (int j=0;j<4;j++)
-        {		
-        	fp+=children[j].getPoint()==null?Math.abs(ave):Math.abs(children[j].getPoint().length-ave);
-        }
-        double total=node.getPoint()==null?0:node.getPoint().length;
-        if(total==0){
-        	return true;
-        }
-        if(fp/total<theta){
-        	return true;
-        }else{
-        	return false;
-        }
+    //只保留计数，丢弃点坐标
+    public void setCount(int count){
+    	this.coords=null;
+    	this.values=null;
+    	this.shared=null;
+    	this.count=count;
+    }
+    //上一次判断是否分裂时的计数，增量更新时用来判断计数是否变化明显
+    public int getEvaluatedCount(){
+    	return this.evaluatedCount;
+    }
+    public void setEvaluatedCount(int evaluatedCount){
+    	this.evaluatedCount=evaluatedCount;
+    }
+    public double getNoisyCount(){
+    	return this.noisyCount;
+    }
+    public void setNoisyCount(double noisyCount){
+    	this.noisyCount=noisyCount;
+    }
+	//根据结点总数和四个子区域(nw,ne,sw,se)的计数判断是否均匀，noise为加在平均值上的噪声
+	public static boolean uniform(double total,double nw,double ne,double sw,double se,double noise,double theta){
+		double to=nw+ne+sw+se;
+		double ave= to/4+noise;
+		double fp=Math.abs(nw-ave)+Math.abs(ne-ave)+Math.abs(sw-ave)+Math.abs(se-ave);
+		if(total==0){
+			return true;
+		}
+		if(fp/total<theta){
+			return true;
+		}else{
+			return false;
+		}
 	}
-	public <T> void insert(QuadTree<T> tree, Node<T> node, int[] dataset){
+	//把数据集中落在结点范围内的点复制成x,y交错排列的数组
+	public int[] collect(int[] dataset){
+		int n=0;
 		for (int i=1;i<dataset.length-1;i+=2){
-			int x=dataset[i];
-			int y=dataset[i+1];
-		if(x>=node.getX() && x<node.getW()+node.getX() && y>=node.getY() && y<node.getH()+node.getY()){
-				Point<T> p=new Point<T>(x,y,node.getEp());
-				tree.setPointForNode(node,p);
+			if(contains(dataset[i],dataset[i+1])){
+				n++;
 			}
 		}
+		int[] xy=new int[2*n];
+		int k=0;
+		for (int i=1;i<dataset.length-1;i+=2){
+			if(contains(dataset[i],dataset[i+1])){
+				xy[k++]=dataset[i];
+				xy[k++]=dataset[i+1];
+			}
+		}
+		return xy;
+	}
+	private boolean contains(int x,int y){
+		return x>=this.x && x<this.w+this.x && y>=this.y && y<this.h+this.y;
 	}
-	//mu，lambda
+	//原算法的分裂判断用的噪声：param+Lap(0,sentive)，即以param为位置、sentive为尺度；只为了结果与原来一致，新的代码用NoiseSource取均值为0的噪声
 	public static double getNoise(double param,double sentive)	{
-		Random random = new Random();
-		double randomDouble = random.nextDouble()-0.5;
-		double noise = param- sentive*Math.signum(randomDouble)*Math.log(1-2*Math.abs(randomDouble));
-		return noise;	
+		return param+LaplaceNoise.DEFAULT.getNoise(sentive);
 	}
 }
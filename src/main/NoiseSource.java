@@ -0,0 +1,37 @@
+package main;
+
+/**
+ * Source of the Laplace noise added to node counts. Every sample is drawn
+ * from the zero-mean Laplace distribution with the given scale, i.e. with
+ * density exp(-|x| / scale) / (2 * scale); the Laplace mechanism at epsilon
+ * uses scale = sensitivity / epsilon.
+ */
+public interface NoiseSource {
+    /**
+     * Draws the noise for one node. The same key always gives the same sample,
+     * so a tree built in a different order still gets the same noise.
+     *
+     * @param {long}   key Identifier of the node the sample belongs to.
+     * @param {double} scale Scale of the distribution.
+     * @return {double} The noise sample.
+     */
+    public double getNoise(long key, double scale);
+
+    /**
+     * Draws the next sample from the calling thread's stream.
+     *
+     * @param {double} scale Scale of the distribution.
+     * @return {double} The noise sample.
+     */
+    public double getNoise(double scale);
+
+    /**
+     * Fills out[from, to) with samples from the calling thread's stream.
+     *
+     * @param {double[]} out The array to fill.
+     * @param {int}      from First index to fill.
+     * @param {int}      to Index after the last one to fill.
+     * @param {double}   scale Scale of the distribution.
+     */
+    public void fill(double[] out, int from, int to, double scale);
+}
@@ -0,0 +1,126 @@
+package main;
+
+import java.util.List;
+
+/**
+ * Summed-area table over the released counts at the finest level of a tree.
+ * The root is cut into a 2^treeH x 2^treeH grid and every leaf spreads its
+ * noisy count evenly over the cells it covers. Counts are assumed to be
+ * uniform inside a cell, so the prefix sum at any point is the bilinear
+ * interpolation of the table and any rectangle is answered from the prefix
+ * sums at its four corners. A corner on the grid lines is a single table
+ * entry, so a grid-aligned rectangle costs four reads; a corner inside a
+ * cell interpolates between the four entries around it, up to 4x4 reads for
+ * a rectangle with no corner on the grid.
+ */
+public class PrefixSumIndex {
+
+    private final double xmin;
+    private final double ymin;
+    private final double cellW;
+    private final double cellH;
+    private final int n;
+    //sum[j*(n+1)+i]为前j行、前i列格子的计数和
+    private final double[] sum;
+
+    /**
+     * Builds the table from the noisy counts of a released tree.
+     *
+     * @param {QuadTree} tree The released tree.
+     * @param {int} treeH Height of the finest level, at most 12.
+     */
+    public <T> PrefixSumIndex(QuadTree<T> tree, int treeH) {
+        //表有(2^treeH+1)^2个double，12层时约134MB
+        if (treeH < 0 || treeH > 12) {
+            throw new QuadTreeException("Index height out of range : " + treeH);
+        }
+        Node<T> root = tree.getRootNode();
+        this.xmin = root.getX();
+        this.ymin = root.getY();
+        this.n = 1 << treeH;
+        this.cellW = root.getW() / n;
+        this.cellH = root.getH() / n;
+        this.sum = new double[(n + 1) * (n + 1)];
+        fill(root);
+        int m = n + 1;
+        for (int j = 1; j <= n; j++) {
+            double row = 0;
+            for (int i = 1; i <= n; i++) {
+                row += sum[j * m + i];
+                sum[j * m + i] = sum[(j - 1) * m + i] + row;
+            }
+        }
+    }
+
+    //先把每个叶子的噪声计数平均分到它覆盖的格子里，格子(i,j)存在sum[(j+1)*(n+1)+i+1]
+    private <T> void fill(Node<T> node) {
+        if (node.getNodeType() == NodeType.POINTER) {
+            fill(node.getNw());
+            fill(node.getNe());
+            fill(node.getSw());
+            fill(node.getSe());
+            return;
+        }
+        int i0 = clamp((int) Math.floor((node.getX() - xmin) / cellW + 1e-9));
+        int j0 = clamp((int) Math.floor((node.getY() - ymin) / cellH + 1e-9));
+        int i1 = Math.max(i0 + 1, clamp((int) Math.round((node.getX() + node.getW() - xmin) / cellW)));
+        int j1 = Math.max(j0 + 1, clamp((int) Math.round((node.getY() + node.getH() - ymin) / cellH)));
+        double per = node.getNoisyCount() / ((i1 - i0) * (j1 - j0));
+        for (int j = j0; j < j1; j++) {
+            for (int i = i0; i < i1; i++) {
+                sum[(j + 1) * (n + 1) + i + 1] += per;
+            }
+        }
+    }
+
+    private int clamp(int i) {
+        return i < 0 ? 0 : (i > n ? n : i);
+    }
+
+    /**
+     * Noisy count of the rectangle [rec[0], rec[0]+w] x [rec[1], rec[1]+h].
+     */
+    public double count(double[] rec, double w, double h) {
+        return prefix(rec[0] + w, rec[1] + h) - prefix(rec[0], rec[1] + h)
+                - prefix(rec[0] + w, rec[1]) + prefix(rec[0], rec[1]);
+    }
+
+    public double[] count(List<double[]> recs, double w, double h) {
+        double[] result = new double[recs.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = count(recs.get(i), w, h);
+        }
+        return result;
+    }
+
+    //(xmin,ymin)到(x,y)范围内的计数，格子内部按均匀分布做双线性插值
+    private double prefix(double x, double y) {
+        double fx = (x - xmin) / cellW;
+        double fy = (y - ymin) / cellH;
+        if (fx <= 0 || fy <= 0) {
+            return 0;
+        }
+        if (fx >= n) {
+            fx = n;
+        }
+        if (fy >= n) {
+            fy = n;
+        }
+        int m = n + 1;
+        //角点在格线上时前缀和就是表中的一项，只读一次
+        double rx = Math.rint(fx);
+        double ry = Math.rint(fy);
+        if (Math.abs(fx - rx) < 1e-9 && Math.abs(fy - ry) < 1e-9) {
+            return sum[(int) ry * m + (int) rx];
+        }
+        int i = Math.min((int) fx, n - 1);
+        int j = Math.min((int) fy, n - 1);
+        double dx = fx - i;
+        double dy = fy - j;
+        double s00 = sum[j * m + i];
+        double s10 = sum[j * m + i + 1];
+        double s01 = sum[(j + 1) * m + i];
+        double s11 = sum[(j + 1) * m + i + 1];
+        return s00 + dx * (s10 - s00) + dy * (s01 - s00) + dx * dy * (s11 - s10 - s01 + s00);
+    }
+}
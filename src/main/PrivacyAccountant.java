@@ -0,0 +1,78 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps track of the privacy budget spent on one dataset. Every mechanism
+ * that looks at the data (a build, a round of split tests, a release) is
+ * charged its epsilon under sequential composition, and a charge that would
+ * exceed the total budget is refused. The charges are kept in order, so the
+ * spending can be audited afterwards.
+ */
+public class PrivacyAccountant {
+
+    private final double budget;
+    private double spent;
+    private final List<String> names = new ArrayList<String>();
+    private final List<Double> costs = new ArrayList<Double>();
+
+    /**
+     * @param {double} budget Total epsilon that may be spent.
+     */
+    public PrivacyAccountant(double budget) {
+        if (budget <= 0) {
+            throw new QuadTreeException("Budget must be positive : " + budget);
+        }
+        this.budget = budget;
+    }
+
+    public synchronized boolean canAfford(double ep) {
+        //留一点余量，避免浮点误差让恰好用完的预算被拒绝
+        return spent + ep <= budget * (1 + 1e-9);
+    }
+
+    /**
+     * Records that a mechanism spent ep.
+     *
+     * @param {String} name What the budget was spent on.
+     * @param {double} ep The epsilon spent.
+     * @throws QuadTreeException If the charge would exceed the budget.
+     */
+    public synchronized void charge(String name, double ep) {
+        if (ep < 0) {
+            throw new QuadTreeException("Negative charge : " + ep);
+        }
+        if (!canAfford(ep)) {
+            throw new QuadTreeException("Privacy budget exceeded : " + name + " needs " + ep + ", remaining " + getRemaining());
+        }
+        spent += ep;
+        names.add(name);
+        costs.add(ep);
+    }
+
+    public double getBudget() {
+        return budget;
+    }
+
+    public synchronized double getSpent() {
+        return spent;
+    }
+
+    public synchronized double getRemaining() {
+        return Math.max(0, budget - spent);
+    }
+
+    //已记录的支出条数
+    public synchronized int size() {
+        return names.size();
+    }
+
+    public synchronized String getName(int i) {
+        return names.get(i);
+    }
+
+    public synchronized double getCost(int i) {
+        return costs.get(i);
+    }
+}
@@ -3,6 +3,10 @@ package main;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
 /**
  * Datastructure: A point Quad Tree for representing 2D data. Each
@@ -13,7 +17,15 @@ import java.util.Random;
  */
 public class QuadTree<T> {
     private Node<T> root_;
+    private static final long RENOISE = 1L << 62;
     private int count_ = 0;
+    private NoiseSource noise_;
+    private boolean countOnly_ = false;
+    private boolean keepLeafPoints_ = false;
+    //release之后为true，树再有改动时清掉
+    private boolean released_ = false;
+    private Metrics metrics_;
+    private AnswerCache cache_;
 
     /**
      * Constructs a new quad tree.
@@ -45,7 +57,7 @@ public class QuadTree<T> {
      * @param {T} value The value associated with the point.
      */
     public void set(double x, double y, double value) {
-
+        this.invalidate();
         Node<T> root = this.root_;
         if (x < root.getX() || y < root.getY() || x > root.getX() + root.getW() || y > root.getY() + root.getH()) {
             throw new QuadTreeException("Out of bounds : (" + x + ", " + y + ")");
@@ -68,7 +80,7 @@ public class QuadTree<T> {
      */
     public double get(double x, double y, double opt_default) {
         Node<T> node = this.find(this.root_, x, y);
-        return node != null ? node.getPoint()[0].getValue() : opt_default;
+        return node != null ? node.getPointValue(node.indexOf(x, y)) : opt_default;
     }
 
     /**
@@ -80,10 +92,7 @@ public class QuadTree<T> {
      *         node doesn't exist.
      */
     public String remove(double x, double y) {
-        Node<T> node = this.find(this.root_, x, y);
-        if (node != null) {
-            node.deletePoint(x,y);
-            this.balance(node);
+        if (this.removePoint(x, y) != null) {
             this.count_--;
             return "removed";
         } else {
@@ -106,7 +115,7 @@ public class QuadTree<T> {
      * @return {boolean} Whether the tree is empty.
      */
     public boolean isEmpty() {
-        return this.root_.getNodeType() == NodeType.EMPTY;
+        return this.root_.getCount() == 0;
     }
 
     /**
@@ -120,6 +129,7 @@ public class QuadTree<T> {
      * Removes all items from the tree.
      */
     public void clear() {
+        this.invalidate();
         this.root_.setNw(null);
         this.root_.setNe(null);
         this.root_.setSw(null);
@@ -138,8 +148,9 @@ public class QuadTree<T> {
         this.traverse(this.root_, new Func<T>() {
             @Override
             public void call(QuadTree<T> quadTree, Node<T> node) {
-            	for (int i=0 ; i<node.getPoint().length;i++){
-            		arr.add(node.getPoint()[i]);
+            	Point<T>[] pt = node.getPoint();
+            	for (int i=0 ; i<node.getCount();i++){
+            		arr.add(pt[i]);
             	}
             }
         });
@@ -170,11 +181,11 @@ public class QuadTree<T> {
             @Override
             public void call(QuadTree<T> quadTree, Node<T> node) {
                 Point<T>[] pt = node.getPoint();
-                for (int i=0 ; i<node.getPoint().length;i++){
+                for (int i=0 ; i<node.getCount();i++){
                 if (pt[i].getX() < xmin || pt[i].getX() > xmax || pt[i].getY() < ymin || pt[i].getY() > ymax) {
                     // Definitely not within the polygon!
                 } else {
-                    arr.add(node.getPoint());
+                    arr.add(pt);
                 }
                 }
 
@@ -189,9 +200,9 @@ public class QuadTree<T> {
             @Override
             public void call(QuadTree<T> quadTree, Node<T> node) {
                 Point<T>[] pt = node.getPoint();
-                for (int i=0 ; i<node.getPoint().length;i++){
+                for (int i=0 ; i<node.getCount();i++){
 	                if (pt[i].getX() > xmin && pt[i].getX() < xmax && pt[i].getY() > ymin && pt[i].getY() < ymax) {
-	                    arr.add(node.getPoint());
+	                    arr.add(pt);
 	                }
                 }
             }
@@ -201,8 +212,11 @@ public class QuadTree<T> {
 
     public void navigate(Node<T> node, Func<T> func, double xmin, double ymin, double xmax, double ymax) {
         switch (node.getNodeType()) {
+            case EMPTY:
             case LEAF:
-                func.call(this, node);
+                if (node.hasPoints()) {
+                    func.call(this, node);
+                }
                 break;
 
             case POINTER:
@@ -241,8 +255,8 @@ public class QuadTree<T> {
         this.traverse(this.root_, new Func<T>() {
             @Override
             public void call(QuadTree<T> quadTree, Node<T> node) {
-            	for (int i=0 ; i<node.getPoint().length;i++){
-            		clone.set(node.getPoint()[i].getX(), node.getPoint()[i].getY(), node.getPoint()[i].getValue());
+            	for (int i=0 ; i<node.getCount();i++){
+            		clone.set(node.getPointX(i), node.getPointY(i), node.getPointValue(i));
             	}
             }
         });
@@ -254,7 +268,7 @@ public class QuadTree<T> {
     /**
      * Traverses the tree depth-first, with quadrants being traversed in clockwise
      * order (NE, SE, SW, NW).  The provided function will be called for each
-     * leaf node that is encountered.
+     * leaf node that holds points.
      * @param {QuadTree.Node} node The current node.
      * @param {function(QuadTree.Node)} fn The function to call
      *     for each leaf node. This function takes the node as an argument, and its
@@ -263,8 +277,11 @@ public class QuadTree<T> {
      */
     public void traverse(Node<T> node, Func<T> func) {
         switch (node.getNodeType()) {
+            case EMPTY:
             case LEAF:
-                func.call(this, node);
+                if (node.hasPoints()) {
+                    func.call(this, node);
+                }
                 break;
 
             case POINTER:
@@ -287,169 +304,107 @@ public class QuadTree<T> {
      * @private
      */
     public Node<T> find(Node<T> node, double x, double y) {
-        Node<T> resposne = null;
         switch (node.getNodeType()) {
             case EMPTY:
-                break;
-
             case LEAF:
-            	for (int i=0 ; i<node.getPoint().length;i++){
-            		resposne = node.getPoint()[i].getX() == x && node.getPoint()[i].getY() == y ? node : null;
-            	}
-                break;
+                for (int i = 0; i < node.getCount() && node.hasPoints(); i++) {
+                    if (node.getPointX(i) == x && node.getPointY(i) == y) {
+                        return node;
+                    }
+                }
+                return null;
 
             case POINTER:
-                resposne = this.find(this.getQuadrantForPoint(node, x, y), x, y);
-                break;
+                return this.find(this.getQuadrantForPoint(node, x, y), x, y);
 
             default:
                 throw new QuadTreeException("Invalid nodeType");
         }
-        return resposne;
     }
 
     /**
-     * Inserts a point into the tree, updating the tree's structure if necessary.
+     * Inserts a point into the leaf that covers it. Leaves hold any number of
+     * points and are never split here: in a private tree the structure only
+     * changes through the noisy split test (see StreamingTree).
      * @param {.QuadTree.Node} parent The parent to insert the point
      *     into.
      * @param {QuadTree.Point} point The point to insert.
-     * @return {boolean} True if a new node was added to the tree; False if a node
-     *     already existed with the correpsonding coordinates and had its value
-     *     reset.
+     * @return {boolean} True if the point was added; False if a point with the
+     *     same coordinates already existed.
      * @private
      */
     private boolean insert(Node<T> parent, Point<T> point) {
-        Boolean result = false;
-        switch (parent.getNodeType()) {
-            case EMPTY:
-            	for (int i=0 ; i<parent.getPoint().length;i++){
-                this.setPointForNode(parent, point);
-            	}
-                result = true;
-                break;
-            case LEAF:
-            	for (int i =0;i<parent.getPoint().length ;i++){
-	                if (parent.getPoint()[i].getX() == point.getX() && parent.getPoint()[i].getY() == point.getY()) {
-	                    this.setPointForNode(parent, point);
-	                    result = false;
-	                } else {
-	                    this.split(parent);
-	                    result = this.insert(parent, point);
-	                }
-            	}
-                break;
-            case POINTER:
-                result = this.insert(
-                        this.getQuadrantForPoint(parent, point.getX(), point.getY()), point);
-                break;
-
-            default:
-                throw new QuadTreeException("Invalid nodeType in parent");
+        if (this.find(parent, point.getX(), point.getY()) != null) {
+            return false;
         }
-        return result;
+        this.addPoint(point.getX(), point.getY(), point.getValue());
+        return true;
     }
 
     /**
-     * Converts a leaf node to a pointer node and reinserts the node's point into
-     * the correct child.
-     * @param {QuadTree.Node} node The node to split.
-     * @private
+     * Adds a point to the leaf that covers it and increments the count of
+     * every node on the path. Internal nodes keep only their counts from then
+     * on. The leaf stores the coordinates unless the tree keeps counts only
+     * for it, in which case only its count changes.
+     *
+     * @param {double} x The x-coordinate.
+     * @param {double} y The y-coordinate.
+     * @return {Node} The leaf the point went to.
      */
-    private void split(Node<T> node) {
-        Point<T>[] oldPoint = node.getPoint();
-        node.setPoint(null);
+    public Node<T> addPoint(double x, double y) {
+        return this.addPoint(x, y, false, 0);
+    }
 
-        node.setNodeType(NodeType.POINTER);
+    /**
+     * Same as addPoint(x, y), storing value alongside the point. Without a
+     * value a point takes the epsilon of its leaf, as the builds do.
+     */
+    public Node<T> addPoint(double x, double y, double value) {
+        return this.addPoint(x, y, true, value);
+    }
 
-        double x = node.getX();
-        double y = node.getY();
-        double hw = node.getW() / 2;
-        double hh = node.getH() / 2;
-        double ep=1;
-        node.setNw(new Node<T>(ep,x, y, hw, hh, node));
-        node.setNe(new Node<T>(ep,x + hw, y, hw, hh, node));
-        node.setSw(new Node<T>(ep,x, y + hh, hw, hh, node));
-        node.setSe(new Node<T>(ep,x + hw, y + hh, hw, hh, node));
-        for (int i=0 ; i<node.getPoint().length;i++){
-        this.insert(node, oldPoint[i]);
+    private Node<T> addPoint(double x, double y, boolean hasValue, double value) {
+        this.invalidate();
+        Node<T> node = this.root_;
+        while (node.getNodeType() == NodeType.POINTER) {
+            node.setCount(node.getCount() + 1);
+            node = this.getQuadrantForPoint(node, x, y);
+        }
+        if (node.hasPoints() || (node.getCount() == 0 && (!this.countOnly_ || this.keepLeafPoints_))) {
+            if (hasValue) {
+                node.addPoint(x, y, value);
+            } else {
+                node.addPoint(x, y);
+            }
+        } else {
+            node.setCount(node.getCount() + 1);
         }
+        return node;
     }
 
     /**
-     * Attempts to balance a node. A node will need balancing if all its children
-     * are empty or it contains just one leaf.
-     * @param {QuadTree.Node} node The node to balance.
-     * @private
+     * Removes one point at (x, y) from the leaf that covers it and decrements
+     * the counts on the path. Only points a leaf actually stores can be
+     * removed: a leaf that keeps only its count cannot tell whether the point
+     * was ever added, so the removal is rejected and no count changes.
+     *
+     * @param {double} x The x-coordinate.
+     * @param {double} y The y-coordinate.
+     * @return {Node} The leaf the point was removed from, or null.
      */
-    private void balance(Node<T> node) {
-        switch (node.getNodeType()) {
-            case EMPTY:
-            case LEAF:
-                if (node.getParent() != null) {
-                    this.balance(node.getParent());
-                }
-                break;
-
-            case POINTER: {
-                Node<T> nw = node.getNw();
-                Node<T> ne = node.getNe();
-                Node<T> sw = node.getSw();
-                Node<T> se = node.getSe();
-                Node<T> firstLeaf = null;
-
-                // Look for the first non-empty child, if there is more than one then we
-                // break as this node can't be balanced.
-                if (nw.getNodeType() != NodeType.EMPTY) {
-                    firstLeaf = nw;
-                }
-                if (ne.getNodeType() != NodeType.EMPTY) {
-                    if (firstLeaf != null) {
-                        break;
-                    }
-                    firstLeaf = ne;
-                }
-                if (sw.getNodeType() != NodeType.EMPTY) {
-                    if (firstLeaf != null) {
-                        break;
-                    }
-                    firstLeaf = sw;
-                }
-                if (se.getNodeType() != NodeType.EMPTY) {
-                    if (firstLeaf != null) {
-                        break;
-                    }
-                    firstLeaf = se;
-                }
-
-                if (firstLeaf == null) {
-                    // All child nodes are empty: so make this node empty.
-                    node.setNodeType(NodeType.EMPTY);
-                    node.setNw(null);
-                    node.setNe(null);
-                    node.setSw(null);
-                    node.setSe(null);
-
-                } else if (firstLeaf.getNodeType() == NodeType.POINTER) {
-                    // Only child was a pointer, therefore we can't rebalance.
-                    break;
-
-                } else {
-                    // Only child was a leaf: so update node's point and make it a leaf.
-                    node.setNodeType(NodeType.LEAF);
-                    node.setNw(null);
-                    node.setNe(null);
-                    node.setSw(null);
-                    node.setSe(null);
-                    node.setPoint(firstLeaf.getPoint());
-                }
-
-                // Try and balance the parent as well.
-                if (node.getParent() != null) {
-                    this.balance(node.getParent());
-                }
-            }
-            break;
+    public Node<T> removePoint(double x, double y) {
+        this.invalidate();
+        Node<T> node = this.root_;
+        while (node.getNodeType() == NodeType.POINTER) {
+            node = this.getQuadrantForPoint(node, x, y);
+        }
+        if (!node.deletePoint(x, y)) {
+            return null;
+        }
+        for (Node<T> p = node.getParent(); p != null; p = p.getParent()) {
+            p.setCount(p.getCount() - 1);
         }
+        return node;
     }
 
     /**
@@ -479,61 +434,685 @@ public class QuadTree<T> {
      * @private
      */
     public void setPointForNode(Node<T> node, Point<T> point) {
-    	Point<T>[] p = new Point[]{point};
-        node.setPoint(p);
+        node.addPoint(point.getX(), point.getY());
     }
-    //构建差分隐私树
+    //构建差分隐私树：范围内的点只收集一次，每个结点划分自己的点得到四个象限的计数，分裂时子结点直接使用划分出的四段
     public <T> Node<T> QTSC(QuadTree<T> tree, Node<T> node, int h,double lambda, int[] dataset,double theta,double sensitive){
-		node.insert(tree, node, dataset);
-		if(h==0){
-			return node;
-		}else if(node.even(node,lambda,tree,dataset,theta,sensitive)){
-			return node;
-		}else{
-			double x = node.getX();
-	        double y = node.getY();
-	        double hw = node.getW() / 2;
-	        double hh = node.getH() / 2;
-	        node.setNodeType(NodeType.POINTER);
-	        node.setNw(new Node<T>(node.getEp()*lambda, x, y, hw, hh, node));
-	        node.setNe(new Node<T>(node.getEp()*lambda, x + hw, y, hw, hh, node));
-	        node.setSw(new Node<T>(node.getEp()*lambda, x, y + hh, hw, hh, node));
-	        node.setSe(new Node<T>(node.getEp()*lambda, x + hw, y + hh, hw, hh, node));
-	        QTSC(tree, node.getNe(),h-1,lambda, dataset,theta,sensitive);
-	        QTSC(tree, node.getNw(),h-1,lambda, dataset,theta,sensitive);
-	        QTSC(tree, node.getSe(),h-1,lambda, dataset,theta,sensitive);
-	        QTSC(tree, node.getSw(),h-1,lambda, dataset,theta,sensitive);
-		}
-		return node;
-	}
-    
+    	tree.invalidate();
+    	Metrics m=tree.getMetrics();
+    	long start=m==null?0:System.nanoTime();
+    	long bytes=m==null?0:Metrics.allocatedBytes();
+    	int[] xy=tree.collect(node,dataset);
+    	int depth=0;
+    	for(Node<T> p=node.getParent();p!=null;p=p.getParent()){
+    		depth++;
+    	}
+    	tree.sequentialBuild(node,xy,0,xy.length/2,h,1L<<(2*depth),lambda,theta,sensitive);
+    	if(m!=null){
+    		tree.buildDone(start,bytes);
+    	}
+    	return node;
+    }
+
+    //与partitionBuild相同，但试分裂的噪声按调用顺序取，不按结点编号
+    private void sequentialBuild(Node<T> node, int[] xy, int lo, int hi, int h, long key,double lambda,double theta,double sensitive){
+    	int[] b=splitSlice(node,xy,lo,hi,h,key,false,lambda,theta,sensitive);
+    	if(b==null){
+    		return;
+    	}
+    	sequentialBuild(node.getNe(),xy,b[1],b[2],h-1,4*key+1,lambda,theta,sensitive);
+    	sequentialBuild(node.getNw(),xy,b[0],b[1],h-1,4*key,lambda,theta,sensitive);
+    	sequentialBuild(node.getSe(),xy,b[3],b[4],h-1,4*key+3,lambda,theta,sensitive);
+    	sequentialBuild(node.getSw(),xy,b[2],b[3],h-1,4*key+2,lambda,theta,sensitive);
+    }
+
+    //结点编号key的层数：根为1，每层编号多两位
+    private static int depth(long key){
+    	return (63-Long.numberOfLeadingZeros(key))/2;
+    }
+
+    //bytes为构建开始时本线程已分配的字节数
+    private void buildDone(long start,long bytes){
+    	long now=Metrics.allocatedBytes();
+    	this.metrics_.build(System.nanoTime()-start,bytes<0 || now<0?-1:now-bytes);
+    }
+    //单次划分构建差分隐私树：范围内的点只复制一次，之后每层只在自己的区间内按象限中点原地划分，结果与QTSC一致
+    public Node<T> QTSCPartition(Node<T> node, int h,double lambda, int[] dataset,double theta,double sensitive){
+    	invalidate();
+    	Metrics m=this.metrics_;
+    	long start=m==null?0:System.nanoTime();
+    	long bytes=m==null?0:Metrics.allocatedBytes();
+    	int[] xy=collect(node,dataset);
+    	partitionBuild(node,xy,0,xy.length/2,h,1,lambda,theta,sensitive);
+    	if(m!=null){
+    		buildDone(start,bytes);
+    	}
+    	return node;
+    }
+
+    private int[] collect(Node<T> node, int[] dataset){
+    	if(this.metrics_!=null){
+    		this.metrics_.pointsScanned(2*((dataset.length-1)/2));
+    	}
+    	return node.collect(dataset);
+    }
+
+    /**
+     * Builds the private tree like QTSCPartition, but the four quadrants of a
+     * node are built as parallel fork-join tasks. A slice is built sequentially
+     * once it is at least cutoffDepth levels below the root or holds no more
+     * than cutoffPoints points. With a seeded noise source the result is the
+     * same tree as the serial build. With metrics attached, the allocation of
+     * a build only counts the calling thread, not the pool's workers.
+     *
+     * @param {int} cutoffDepth Depth from which subtrees are built sequentially.
+     * @param {int} cutoffPoints Point count at or below which subtrees are built sequentially.
+     * @param {ForkJoinPool} pool The pool to run the tasks in.
+     */
+    public Node<T> QTSCParallel(Node<T> node, int h,double lambda, int[] dataset,double theta,double sensitive,int cutoffDepth,int cutoffPoints,ForkJoinPool pool){
+    	invalidate();
+    	Metrics m=this.metrics_;
+    	long start=m==null?0:System.nanoTime();
+    	long bytes=m==null?0:Metrics.allocatedBytes();
+    	int[] xy=collect(node,dataset);
+    	pool.invoke(new BuildTask(node,xy,0,xy.length/2,h,1,0,lambda,theta,sensitive,cutoffDepth,cutoffPoints));
+    	if(m!=null){
+    		buildDone(start,bytes);
+    	}
+    	return node;
+    }
+
+    public Node<T> QTSCParallel(Node<T> node, int h,double lambda, int[] dataset,double theta,double sensitive,int cutoffDepth,int cutoffPoints){
+    	return QTSCParallel(node,h,lambda,dataset,theta,sensitive,cutoffDepth,cutoffPoints,ForkJoinPool.commonPool());
+    }
+
+    private class BuildTask extends RecursiveAction {
+    	private static final long serialVersionUID = 1L;
+    	private final Node<T> node;
+    	private final int[] xy;
+    	private final int lo;
+    	private final int hi;
+    	private final int h;
+    	private final long key;
+    	private final int depth;
+    	private final double lambda;
+    	private final double theta;
+    	private final double sensitive;
+    	private final int cutoffDepth;
+    	private final int cutoffPoints;
+
+    	BuildTask(Node<T> node, int[] xy, int lo, int hi, int h, long key, int depth, double lambda, double theta, double sensitive, int cutoffDepth, int cutoffPoints){
+    		this.node=node;
+    		this.xy=xy;
+    		this.lo=lo;
+    		this.hi=hi;
+    		this.h=h;
+    		this.key=key;
+    		this.depth=depth;
+    		this.lambda=lambda;
+    		this.theta=theta;
+    		this.sensitive=sensitive;
+    		this.cutoffDepth=cutoffDepth;
+    		this.cutoffPoints=cutoffPoints;
+    	}
+
+    	@Override
+    	protected void compute(){
+    		if(depth>=cutoffDepth || hi-lo<=cutoffPoints){
+    			partitionBuild(node,xy,lo,hi,h,key,lambda,theta,sensitive);
+    			return;
+    		}
+    		int[] b=splitSlice(node,xy,lo,hi,h,key,true,lambda,theta,sensitive);
+    		if(b==null){
+    			return;
+    		}
+    		invokeAll(new BuildTask(node.getNe(),xy,b[1],b[2],h-1,4*key+1,depth+1,lambda,theta,sensitive,cutoffDepth,cutoffPoints),
+    				new BuildTask(node.getNw(),xy,b[0],b[1],h-1,4*key,depth+1,lambda,theta,sensitive,cutoffDepth,cutoffPoints),
+    				new BuildTask(node.getSe(),xy,b[3],b[4],h-1,4*key+3,depth+1,lambda,theta,sensitive,cutoffDepth,cutoffPoints),
+    				new BuildTask(node.getSw(),xy,b[2],b[3],h-1,4*key+2,depth+1,lambda,theta,sensitive,cutoffDepth,cutoffPoints));
+    	}
+    }
+
+    /**
+     * Builds the private tree from precomputed cell counts (a CountPyramid or
+     * a MortonIndex) instead of the points: the count of a node and of its
+     * four quadrants are lookups, so no point is tested against node bounds.
+     * The nodes only keep their counts. With the same seeded noise source the
+     * tree is the same as the one QTSCPartition builds. The node must be the
+     * root the counts were built for.
+     */
+    public Node<T> QTSCCounts(Node<T> node, int h,double lambda, CellCounts counts,double theta,double sensitive){
+    	invalidate();
+    	if(h>counts.getHeight()){
+    		throw new QuadTreeException("Tree height "+h+" exceeds count height "+counts.getHeight());
+    	}
+    	Metrics m=this.metrics_;
+    	long start=m==null?0:System.nanoTime();
+    	long bytes=m==null?0:Metrics.allocatedBytes();
+    	countsBuild(node,counts,0,0,0,h,1,lambda,theta,sensitive);
+    	if(m!=null){
+    		buildDone(start,bytes);
+    	}
+    	return node;
+    }
+
+    //(d,i,j)为结点所在的层和格子位置
+    private void countsBuild(Node<T> node, CellCounts counts, int d, int i, int j, int h, long key,double lambda,double theta,double sensitive){
+    	Metrics m=this.metrics_;
+    	long start=m==null?0:System.nanoTime();
+    	node.setCount(counts.getCount(d,i,j));
+    	if(h==0){
+    		if(m!=null){
+    			m.node(d,System.nanoTime()-start);
+    		}
+    		return;
+    	}
+    	double noise=noise(key,sensitive/(node.getEp()*lambda),sensitive);
+    	if(Node.uniform(node.getCount(),counts.getCount(d+1,2*i,2*j),counts.getCount(d+1,2*i+1,2*j),
+    			counts.getCount(d+1,2*i,2*j+1),counts.getCount(d+1,2*i+1,2*j+1),noise,theta)){
+    		if(m!=null){
+    			m.trialSplit(true);
+    			m.node(d,System.nanoTime()-start);
+    		}
+    		return;
+    	}
+    	double x = node.getX();
+        double y = node.getY();
+        double hw = node.getW() / 2;
+        double hh = node.getH() / 2;
+        node.setNodeType(NodeType.POINTER);
+        node.setNw(new Node<T>(node.getEp()*lambda, x, y, hw, hh, node));
+        node.setNe(new Node<T>(node.getEp()*lambda, x + hw, y, hw, hh, node));
+        node.setSw(new Node<T>(node.getEp()*lambda, x, y + hh, hw, hh, node));
+        node.setSe(new Node<T>(node.getEp()*lambda, x + hw, y + hh, hw, hh, node));
+        if(m!=null){
+        	m.trialSplit(false);
+        	m.nodesCreated(4);
+        	m.node(d,System.nanoTime()-start);
+        }
+        countsBuild(node.getNe(),counts,d+1,2*i+1,2*j,h-1,4*key+1,lambda,theta,sensitive);
+        countsBuild(node.getNw(),counts,d+1,2*i,2*j,h-1,4*key,lambda,theta,sensitive);
+        countsBuild(node.getSe(),counts,d+1,2*i+1,2*j+1,h-1,4*key+3,lambda,theta,sensitive);
+        countsBuild(node.getSw(),counts,d+1,2*i,2*j+1,h-1,4*key+2,lambda,theta,sensitive);
+    }
+
+    //结点编号：根为1，子结点为4*key+q，q依次为nw=0,ne=1,sw=2,se=3
+    private void partitionBuild(Node<T> node, int[] xy, int lo, int hi, int h, long key,double lambda,double theta,double sensitive){
+    	int[] b=splitSlice(node,xy,lo,hi,h,key,true,lambda,theta,sensitive);
+    	if(b==null){
+    		return;
+    	}
+        partitionBuild(node.getNe(),xy,b[1],b[2],h-1,4*key+1,lambda,theta,sensitive);
+        partitionBuild(node.getNw(),xy,b[0],b[1],h-1,4*key,lambda,theta,sensitive);
+        partitionBuild(node.getSe(),xy,b[3],b[4],h-1,4*key+3,lambda,theta,sensitive);
+        partitionBuild(node.getSw(),xy,b[2],b[3],h-1,4*key+2,lambda,theta,sensitive);
+    }
+
+    //给结点填入[lo,hi)内的点并判断是否分裂，keyed为false时噪声不按结点编号取；分裂时创建四个子结点，返回nw,ne,sw,se四段的分界，否则返回null
+    private int[] splitSlice(Node<T> node, int[] xy, int lo, int hi, int h, long key,boolean keyed,double lambda,double theta,double sensitive){
+    	Metrics m=this.metrics_;
+    	long start=m==null?0:System.nanoTime();
+    	if(this.countOnly_){
+    		node.setCount(hi-lo);
+    	}else{
+    		node.setPoints(xy,lo,hi);
+    	}
+    	if(h==0){
+    		keepLeafPoints(node,xy,lo,hi);
+    		if(m!=null){
+    			m.node(depth(key),System.nanoTime()-start);
+    		}
+    		return null;
+    	}
+    	double x = node.getX();
+        double y = node.getY();
+        double hw = node.getW() / 2;
+        double hh = node.getH() / 2;
+        //先按y分成上下两半，再各自按x分成左右，得到nw,ne,sw,se四段
+        int mid=partition(xy,lo,hi,1,y+hh);
+        int b1=partition(xy,lo,mid,0,x+hw);
+        int b3=partition(xy,mid,hi,0,x+hw);
+        double noise=keyed?noise(key,sensitive/(node.getEp()*lambda),sensitive):getNoise(sensitive/(node.getEp()*lambda),sensitive);
+        if(m!=null){
+        	//按y划分扫描整段，再按x划分两半
+        	m.pointsScanned(2*(hi-lo));
+        }
+        if(Node.uniform(hi-lo,b1-lo,mid-b1,b3-mid,hi-b3,noise,theta)){
+        	keepLeafPoints(node,xy,lo,hi);
+        	if(m!=null){
+        		m.trialSplit(true);
+        		m.node(depth(key),System.nanoTime()-start);
+        	}
+        	return null;
+        }
+        node.setNodeType(NodeType.POINTER);
+        node.setNw(new Node<T>(node.getEp()*lambda, x, y, hw, hh, node));
+        node.setNe(new Node<T>(node.getEp()*lambda, x + hw, y, hw, hh, node));
+        node.setSw(new Node<T>(node.getEp()*lambda, x, y + hh, hw, hh, node));
+        node.setSe(new Node<T>(node.getEp()*lambda, x + hw, y + hh, hw, hh, node));
+        if(m!=null){
+        	m.trialSplit(false);
+        	m.nodesCreated(4);
+        	m.node(depth(key),System.nanoTime()-start);
+        }
+        return new int[]{lo,b1,mid,b3,hi};
+    }
+
+    private void keepLeafPoints(Node<T> node, int[] xy, int lo, int hi){
+    	if(this.countOnly_ && this.keepLeafPoints_){
+    		node.setPoints(xy,lo,hi);
+    	}
+    }
+
+    //把[lo,hi)内的点按坐标分成小于pivot和不小于pivot两段，返回分界位置；axis为0按x划分，为1按y划分
+    static int partition(int[] xy, int lo, int hi, int axis, double pivot){
+    	int i=lo;
+    	int j=hi-1;
+    	while(i<=j){
+    		if(xy[2*i+axis]<pivot){
+    			i++;
+    		}else{
+    			int tx=xy[2*i];
+    			int ty=xy[2*i+1];
+    			xy[2*i]=xy[2*j];
+    			xy[2*i+1]=xy[2*j+1];
+    			xy[2*j]=tx;
+    			xy[2*j+1]=ty;
+    			j--;
+    		}
+    	}
+    	return i;
+    }
+
     public List<double[]> search(List<double[]> recs, double w, double h,double sensitive){
     	List<double[]> result=new ArrayList<double[]>();
+    	SearchBuffer<T> buf=new SearchBuffer<T>();
     	for(int i=0;i<recs.size();i++){
-	    	List<Node<T>> leaf=new ArrayList<Node<T>>();
-	    	leaf=searchLeaf(this.root_,recs.get(i),w,h);
-	    	double count=0;
-	    	double noise=0;
-	    	for (int j=0;j<leaf.size();j++){	
-    			count+=leaf.get(j).getCount();
-    			double x=(recs.get(i)[0]+w-leaf.get(j).getX())*(recs.get(i)[1]+h-leaf.get(j).getH())/(leaf.get(j).getW()*leaf.get(j).getH());
-    			System.out.println(x);
-    			noise+=getNoise(sensitive/leaf.get(j).getEp(),sensitive);	
-	    	}
-	    	double[] temp={count,noise};
+	    	double[] temp=new double[2];
+	    	search(recs.get(i),w,h,sensitive,buf,temp);
 			result.add(temp);
     	}
     	return result;
     }
-    
-    //获取噪声
+
+    /**
+     * Evaluates a batch of rectangles of the same size in parallel. The
+     * rectangles are given as a flat array of (x, y) pairs and rectangle i
+     * writes its leaf count to count[i] and its noise to noise[i]. The batch
+     * is cut into chunks that run on a parallel stream, each with its own
+     * SearchBuffer.
+     *
+     * @param {double[]} recs Lower corners of the rectangles, x0,y0,x1,y1,...
+     * @param {double} w Width of every rectangle.
+     * @param {double} h Height of every rectangle.
+     * @param {double} sensitive Sensitivity of the counts.
+     * @param {double[]} count Receives the count of each rectangle.
+     * @param {double[]} noise Receives the noise of each rectangle.
+     */
+    public void searchBatch(final double[] recs, final double w, final double h, final double sensitive, final double[] count, final double[] noise){
+    	final int n=recs.length/2;
+    	final int chunk=1024;
+    	IntStream.range(0,(n+chunk-1)/chunk).parallel().forEach(new IntConsumer() {
+    		@Override
+    		public void accept(int c){
+    			SearchBuffer<T> buf=new SearchBuffer<T>();
+    			double[] rec=new double[2];
+    			double[] out=new double[2];
+    			int end=Math.min(n,(c+1)*chunk);
+    			for(int i=c*chunk;i<end;i++){
+    				rec[0]=recs[2*i];
+    				rec[1]=recs[2*i+1];
+    				search(rec,w,h,sensitive,buf,out);
+    				count[i]=out[0];
+    				noise[i]=out[1];
+    			}
+    		}
+    	});
+    }
+
+    //返回{计数数组,噪声数组}
+    public double[][] searchBatch(double[] recs, double w, double h, double sensitive){
+    	double[][] result=new double[2][recs.length/2];
+    	searchBatch(recs,w,h,sensitive,result[0],result[1]);
+    	return result;
+    }
+
+    //查询一个范围：out[0]为叶子的真实计数和，out[1]为噪声和；只用buf中的栈，不分配内存；设置了缓存时同一个范围返回同一个答案
+    public void search(double[] rec, double w, double h, double sensitive, SearchBuffer<T> buf, double[] out){
+    	AnswerCache cache=this.cache_;
+    	if(cache!=null && cache.get(rec,w,h,sensitive,out)){
+    		return;
+    	}
+    	double count=0;
+    	double noise=0;
+    	int leaves=0;
+    	Node<T>[] stack=buf.stack;
+    	int top=0;
+    	stack[top++]=this.root_;
+    	while(top>0){
+    		Node<T> node=stack[--top];
+    		if(node.getNodeType()!=NodeType.POINTER){
+    			if(nodeSearch(node,rec,w,h)){
+    				count+=node.getCount();
+    				noise+=getNoise(sensitive/node.getEp(),sensitive);
+    				leaves++;
+    			}
+    		}else if(overlaps(node,rec,w,h)){
+    			if(top+4>stack.length){
+    				stack=buf.growStack();
+    			}
+    			stack[top++]=node.getSw();
+    			stack[top++]=node.getSe();
+    			stack[top++]=node.getNw();
+    			stack[top++]=node.getNe();
+    		}
+    	}
+    	out[0]=count;
+    	out[1]=noise;
+    	if(this.metrics_!=null){
+    		this.metrics_.query(leaves);
+    	}
+    	if(cache!=null){
+    		//别的线程先算出了同一个范围时换成它的答案
+    		cache.putIfAbsent(rec,w,h,sensitive,out);
+    	}
+    }
+
+    /**
+     * Noisy count of a rectangle from the released noisy counts, using the
+     * canonical decomposition of the rectangle into tree nodes. A node that
+     * lies inside the rectangle is answered by its own noisy count without
+     * visiting its subtree, so only the nodes cut by the rectangle boundary
+     * are descended and the work grows with the perimeter of the query
+     * rather than its area. A leaf cut by the boundary contributes its noisy
+     * count in proportion to the part of its area inside the rectangle, as
+     * the points of a leaf are taken to be uniform.
+     * <p/>
+     * Unlike search, which only keeps the leaves nodeSearch accepts (leaves
+     * lying entirely inside the rectangle fail that test), every part of the
+     * rectangle is counted. The tree must have been released.
+     *
+     * @param {double[]} rec Lower corner of the rectangle.
+     * @param {double} w Width of the rectangle.
+     * @param {double} h Height of the rectangle.
+     * @param {SearchBuffer} buf Working space of the calling thread.
+     */
+    public double rangeCount(double[] rec, double w, double h, SearchBuffer<T> buf){
+    	double sum=0;
+    	int visited=0;
+    	Node<T>[] stack=buf.stack;
+    	int top=0;
+    	stack[top++]=this.root_;
+    	while(top>0){
+    		Node<T> node=stack[--top];
+    		visited++;
+    		double part=coverage(node.getX(),node.getY(),node.getW(),node.getH(),rec,w,h);
+    		if(part==0){
+    			continue;
+    		}
+    		if(part==1 || node.getNodeType()!=NodeType.POINTER){
+    			sum+=part*node.getNoisyCount();
+    		}else{
+    			if(top+4>stack.length){
+    				stack=buf.growStack();
+    			}
+    			stack[top++]=node.getSw();
+    			stack[top++]=node.getSe();
+    			stack[top++]=node.getNw();
+    			stack[top++]=node.getNe();
+    		}
+    	}
+    	if(this.metrics_!=null){
+    		this.metrics_.rangeQuery(visited);
+    	}
+    	return sum;
+    }
+
+    public double rangeCount(double[] rec, double w, double h){
+    	return rangeCount(rec,w,h,new SearchBuffer<T>());
+    }
+
+    //结点面积落在查询范围内的比例：完全在范围内为1，不相交为0
+    static double coverage(double nx,double ny,double nw,double nh,double[] rec, double w,double h){
+    	double x0=rec[0];
+    	double y0=rec[1];
+    	double x1=rec[0]+w;
+    	double y1=rec[1]+h;
+    	if(nx>=x0 && nx+nw<=x1 && ny>=y0 && ny+nh<=y1){
+    		return 1;
+    	}
+    	double ox=Math.min(x1,nx+nw)-Math.max(x0,nx);
+    	double oy=Math.min(y1,ny+nh)-Math.max(y0,ny);
+    	if(ox<=0 || oy<=0){
+    		return 0;
+    	}
+    	return ox*oy/(nw*nh);
+    }
+
+    /**
+     * In count-only mode the builds keep just the true count of each node
+     * instead of its points, so the tree takes O(nodes) memory.
+     *
+     * @param {boolean} countOnly Whether nodes store counts only.
+     */
+    public void setCountOnly(boolean countOnly){
+    	this.countOnly_=countOnly;
+    }
+
+    public boolean isCountOnly(){
+    	return this.countOnly_;
+    }
+
+    /**
+     * In count-only mode, whether leaves still keep their points.
+     *
+     * @param {boolean} keepLeafPoints Whether leaves keep their points.
+     */
+    public void setKeepLeafPoints(boolean keepLeafPoints){
+    	this.keepLeafPoints_=keepLeafPoints;
+    }
+
+    public boolean isKeepLeafPoints(){
+    	return this.keepLeafPoints_;
+    }
+
+    //给每个结点的真实计数加上Lap(0,sensitive/ep)的噪声，得到发布用的噪声计数
+    public void release(double sensitive){
+    	release(this.root_,1,sensitive);
+    	this.released_=true;
+    }
+
+    /**
+     * @return {boolean} Whether every node holds a noisy count from a release
+     *         that no later change to the tree has made stale.
+     */
+    public boolean isReleased(){
+    	return this.released_;
+    }
+
+    //由自己发布噪声计数的StreamingTree和FlatTree调用
+    void markReleased(){
+    	this.released_=true;
+    }
+
+    private void release(Node<T> node,long key,double sensitive){
+    	node.setNoisyCount(node.getCount()+laplace(-key,sensitive/node.getEp()));
+    	if(node.getNodeType()==NodeType.POINTER){
+    		release(node.getNw(),4*key,sensitive);
+    		release(node.getNe(),4*key+1,sensitive);
+    		release(node.getSw(),4*key+2,sensitive);
+    		release(node.getSe(),4*key+3,sensitive);
+    	}
+    }
+
+    /**
+     * Second stage of the algorithm, run on a tree that was built with budget
+     * e1 = a*e and released. In one post-order traversal a pointer node whose
+     * children are all leaves is merged into a leaf when their noisy counts
+     * pass the same uniformity test as the split (fp/total < theta, without
+     * extra noise). Merges cascade upwards within the same traversal. Every
+     * node left in the tree then gets a fresh noisy count with its share of
+     * e2 = (1-a)e, i.e. its epsilon scaled by (1-a)/a, and keeps that epsilon.
+     *
+     * @param {double} a The budget allocation parameter, in (0, 1).
+     * @param {double} theta Uniformity threshold.
+     * @param {double} sensitive Sensitivity of the counts.
+     */
+    public void mergeAndRenoise(double a,double theta,double sensitive){
+    	invalidate();
+    	if(a<=0 || a>=1){
+    		throw new QuadTreeException("a must be in (0, 1) : "+a);
+    	}
+    	merge(this.root_,1,(1-a)/a,theta,sensitive);
+    	renoise(this.root_,1,(1-a)/a,sensitive);
+    	this.released_=true;
+    }
+
+    //后序遍历：子结点处理完后再决定本结点是否合并；不合并时子结点的结构已经确定，给它们重新加噪
+    private void merge(Node<T> node,long key,double scale,double theta,double sensitive){
+    	if(node.getNodeType()!=NodeType.POINTER){
+    		return;
+    	}
+    	merge(node.getNw(),4*key,scale,theta,sensitive);
+    	merge(node.getNe(),4*key+1,scale,theta,sensitive);
+    	merge(node.getSw(),4*key+2,scale,theta,sensitive);
+    	merge(node.getSe(),4*key+3,scale,theta,sensitive);
+    	if(node.getNw().getNodeType()!=NodeType.POINTER && node.getNe().getNodeType()!=NodeType.POINTER
+    			&& node.getSw().getNodeType()!=NodeType.POINTER && node.getSe().getNodeType()!=NodeType.POINTER
+    			&& Node.uniform(node.getNoisyCount(),node.getNw().getNoisyCount(),node.getNe().getNoisyCount(),
+    					node.getSw().getNoisyCount(),node.getSe().getNoisyCount(),0,theta)){
+    		node.setNodeType(NodeType.EMPTY);
+    		node.setNw(null);
+    		node.setNe(null);
+    		node.setSw(null);
+    		node.setSe(null);
+    	}else{
+    		renoise(node.getNw(),4*key,scale,sensitive);
+    		renoise(node.getNe(),4*key+1,scale,sensitive);
+    		renoise(node.getSw(),4*key+2,scale,sensitive);
+    		renoise(node.getSe(),4*key+3,scale,sensitive);
+    	}
+    }
+
+    //第二次加噪的编号与release的-key错开
+    private void renoise(Node<T> node,long key,double scale,double sensitive){
+    	node.setEp(node.getEp()*scale);
+    	node.setNoisyCount(node.getCount()+laplace(-(key+RENOISE),sensitive/node.getEp()));
+    }
+
+    //GBLUE后置处理：在扁平数组上做一致性修正，再写回结点的噪声计数
+    public FlatTree<T> gblue(){
+    	FlatTree<T> flat=new FlatTree<T>(this);
+    	flat.gblue();
+    	flat.apply();
+    	return flat;
+    }
+
+    public void setNoiseSource(NoiseSource noise){
+    	this.noise_=noise;
+    }
+
+    public NoiseSource getNoiseSource(){
+    	return this.noise_;
+    }
+
+    /**
+     * Attaches counters to the build and search paths; null (the default)
+     * turns them off.
+     *
+     * @param {Metrics} metrics The counters to update, or null.
+     */
+    public void setMetrics(Metrics metrics){
+    	this.metrics_=metrics;
+    }
+
+    public Metrics getMetrics(){
+    	return this.metrics_;
+    }
+
+    /**
+     * Caches the answers of search, so asking for the same rectangle again
+     * returns the same answer without drawing new noise. The cache is
+     * cleared whenever the tree is rebuilt or its points change; null (the
+     * default) turns caching off.
+     *
+     * @param {AnswerCache} cache The cache to use, or null.
+     */
+    public void setAnswerCache(AnswerCache cache){
+    	this.cache_=cache;
+    }
+
+    public AnswerCache getAnswerCache(){
+    	return this.cache_;
+    }
+
+    private void invalidate(){
+    	this.released_=false;
+    	if(this.cache_!=null){
+    		this.cache_.clear();
+    	}
+    }
+
+    //按结点编号取噪声，没有设置噪声源时使用默认噪声；参数含义与Node.getNoise相同，是param+Lap(0,sentive)
+    double noise(long key,double param,double sentive){
+    	if(this.metrics_!=null){
+    		this.metrics_.noiseSamples(1);
+    	}
+    	return this.noise_==null?Node.getNoise(param,sentive):param+this.noise_.getNoise(key,sentive);
+    }
+
+    //按结点编号取均值为0、尺度为scale的拉普拉斯噪声，发布噪声计数时使用
+    double laplace(long key,double scale){
+    	if(this.metrics_!=null){
+    		this.metrics_.noiseSamples(1);
+    	}
+    	return this.noise_==null?LaplaceNoise.DEFAULT.getNoise(scale):this.noise_.getNoise(key,scale);
+    }
+
+    //均值为0、尺度为scale的拉普拉斯噪声，不按结点编号
+    public double laplace(double scale){
+    	if(this.metrics_!=null){
+    		this.metrics_.noiseSamples(1);
+    	}
+    	return this.noise_==null?LaplaceNoise.DEFAULT.getNoise(scale):this.noise_.getNoise(scale);
+    }
+
+    //获取噪声，参数含义与Node.getNoise相同
     public double getNoise(double param,double sentive)	{
-		Random random = new Random();
-		double randomDouble = random.nextDouble()-0.5;
-		double noise = param- sentive*Math.signum(randomDouble)*Math.log(1-2*Math.abs(randomDouble));
-		return noise;	
+		if(this.metrics_!=null){
+			this.metrics_.noiseSamples(1);
+		}
+		return this.noise_==null?Node.getNoise(param,sentive):param+this.noise_.getNoise(sentive);
 	}
    
+    //确定在范围内的叶子结点：用显式栈遍历，按NE,NW,SE,SW的顺序把叶子写入buf，返回叶子个数
+    public int searchLeaf(double[] rec, double w, double h, SearchBuffer<T> buf){
+    	buf.clear();
+    	Node<T>[] stack=buf.stack;
+    	int top=0;
+    	stack[top++]=this.root_;
+    	while(top>0){
+    		Node<T> node=stack[--top];
+    		if(node.getNodeType()!=NodeType.POINTER){
+    			if(nodeSearch(node,rec,w,h)){
+    				buf.add(node);
+    			}
+    		}else if(overlaps(node,rec,w,h)){
+    			if(top+4>stack.length){
+    				stack=buf.growStack();
+    			}
+    			stack[top++]=node.getSw();
+    			stack[top++]=node.getSe();
+    			stack[top++]=node.getNw();
+    			stack[top++]=node.getNe();
+    		}
+    	}
+    	if(this.metrics_!=null){
+    		this.metrics_.query(buf.size());
+    	}
+    	return buf.size();
+    }
+
     //确定在范围内的叶子结点
     public List<Node<T>> searchLeaf(Node<T> node,double[] rec, double w,double h){
     	List<Node<T>> leaf=new ArrayList<Node<T>>();
@@ -552,16 +1131,26 @@ public class QuadTree<T> {
     	}
     	return leaf;
     }
+    //结点与查询范围是否有公共部分(含边界)；不相交的子树中不会有nodeSearch成立的叶子，可以整棵跳过
+    private boolean overlaps(Node<T> node,double[] rec, double w,double h){
+    	return overlaps(node.getX(),node.getY(),node.getW(),node.getH(),rec,w,h);
+    }
+    static boolean overlaps(double nx,double ny,double nw,double nh,double[] rec, double w,double h){
+    	return nx<=rec[0]+w && rec[0]<=nx+nw && ny<=rec[1]+h && rec[1]<=ny+nh;
+    }
   //确定该叶子结点是否在范围内
     public boolean nodeSearch(Node<T> node,double[] rec, double w,double h){
+    	return nodeSearch(node.getX(),node.getY(),node.getW(),node.getH(),rec,w,h);
+    }
+    static boolean nodeSearch(double nx,double ny,double nw,double nh,double[] rec, double w,double h){
     	double xmin=rec[0];
     	double xmax=rec[0]+w;
     	double ymin=rec[1];
     	double ymax=rec[1]+h;
-    	double nxmin=node.getX();
-    	double nymin=node.getY();
-    	double nxmax=node.getW()+nxmin;
-    	double nymax=node.getH()+nymin;
+    	double nxmin=nx;
+    	double nymin=ny;
+    	double nxmax=nw+nxmin;
+    	double nymax=nh+nymin;
     	if((((ymax>=nymin)&&(ymax<=nymax))||((ymin<=nymax)&&(ymin>=nymin)))&&(((xmax>=nxmin)&&(xmax<=nxmax))||((xmin<=nxmax)&&(xmin>=nxmin)))){
 			return true;
 		}else{
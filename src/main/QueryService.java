@@ -0,0 +1,176 @@
+package main;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Answers range counts from the current released tree. Readers take the
+ * current snapshot with one volatile read and query it without locks; a new
+ * release replaces it with an atomic swap, so a query sees either the old or
+ * the new snapshot, never a mix. The snapshots themselves (FrozenTree,
+ * MappedTree) never change.
+ * <p/>
+ * start serves GET /count?x=..&y=..&w=..&h=.. on the loopback interface and
+ * replies with the noisy count as plain text. Requests run on virtual
+ * threads when the JVM has them (Java 21+) and on a fixed pool otherwise.
+ * <p/>
+ * Usage: java main.QueryService snapshot-file [port]
+ */
+public class QueryService {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final AtomicReference<ReleasedTree> current;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public QueryService(ReleasedTree tree) {
+        if (tree == null) {
+            throw new QuadTreeException("No tree to serve");
+        }
+        this.current = new AtomicReference<ReleasedTree>(tree);
+    }
+
+    /**
+     * Makes tree the snapshot that new queries see.
+     *
+     * @return {ReleasedTree} The snapshot it replaced.
+     */
+    public ReleasedTree publish(ReleasedTree tree) {
+        if (tree == null) {
+            throw new QuadTreeException("No tree to serve");
+        }
+        return current.getAndSet(tree);
+    }
+
+    public ReleasedTree current() {
+        return current.get();
+    }
+
+    public double count(double[] rec, double w, double h) {
+        return current.get().count(rec, w, h);
+    }
+
+    /**
+     * Starts the HTTP front end on 127.0.0.1.
+     *
+     * @param {int} port The port, or 0 for any free port.
+     * @return {int} The port it listens on.
+     */
+    public synchronized int start(int port) throws IOException {
+        if (server != null) {
+            throw new QuadTreeException("Already started");
+        }
+        //JDK自带的服务器默认不关Nagle算法，小响应会被延迟确认拖慢到每次约40ms；这个属性在服务器类第一次加载时读取
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        HttpServer http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        http.createContext("/count", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                answer(exchange);
+            }
+        });
+        executor = newExecutor();
+        http.setExecutor(executor);
+        http.start();
+        server = http;
+        return http.getAddress().getPort();
+    }
+
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdown();
+            try {
+                executor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            server = null;
+            executor = null;
+        }
+    }
+
+    private void answer(HttpExchange exchange) throws IOException {
+        int status = 200;
+        String body;
+        try {
+            double[] rec = new double[2];
+            double w = Double.NaN;
+            double h = Double.NaN;
+            rec[0] = Double.NaN;
+            rec[1] = Double.NaN;
+            String query = exchange.getRequestURI().getRawQuery();
+            if (query != null) {
+                for (String pair : query.split("&")) {
+                    int eq = pair.indexOf('=');
+                    if (eq < 0) {
+                        continue;
+                    }
+                    String key = pair.substring(0, eq);
+                    double value = Double.parseDouble(pair.substring(eq + 1));
+                    if (key.equals("x")) {
+                        rec[0] = value;
+                    } else if (key.equals("y")) {
+                        rec[1] = value;
+                    } else if (key.equals("w")) {
+                        w = value;
+                    } else if (key.equals("h")) {
+                        h = value;
+                    }
+                }
+            }
+            if (Double.isNaN(rec[0]) || Double.isNaN(rec[1]) || Double.isNaN(w) || Double.isNaN(h)) {
+                status = 400;
+                body = "expected x, y, w and h\n";
+            } else {
+                body = count(rec, w, h) + "\n";
+            }
+        } catch (NumberFormatException e) {
+            status = 400;
+            body = "not a number : " + e.getMessage() + "\n";
+        }
+        byte[] bytes = body.getBytes(UTF8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+
+    //有虚拟线程(Java 21+)时每个请求一个虚拟线程，否则用固定大小的线程池；项目按Java 8编译，所以用反射取
+    static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(Math.max(4, 2 * Runtime.getRuntime().availableProcessors()));
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: java main.QueryService snapshot-file [port]");
+            System.exit(1);
+        }
+        QueryService service = new QueryService(MappedTree.open(new File(args[0])));
+        int port = service.start(args.length > 1 ? Integer.parseInt(args[1]) : 8080);
+        System.out.println("Serving " + args[0] + " on http://127.0.0.1:" + port + "/count");
+    }
+}
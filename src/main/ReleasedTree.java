@@ -0,0 +1,161 @@
+package main;
+
+/**
+ * Read-only view of a released tree in the breadth-first layout of FlatTree:
+ * node 0 is the root and the children of a node (nw, ne, sw, se) are
+ * consecutive from its first child. Implementations only expose released
+ * values, and count may be called from any number of threads.
+ */
+public abstract class ReleasedTree {
+
+    protected final int size;
+    protected final int levels;
+    protected final double xmin;
+    protected final double ymin;
+    protected final double w;
+    protected final double h;
+
+    protected ReleasedTree(int size, int levels, double xmin, double ymin, double w, double h) {
+        this.size = size;
+        this.levels = levels;
+        this.xmin = xmin;
+        this.ymin = ymin;
+        this.w = w;
+        this.h = h;
+    }
+
+    //第一个子结点的编号，叶子为-1
+    public abstract int getFirstChild(int i);
+
+    public abstract double getEp(int i);
+
+    public abstract double getNoisyCount(int i);
+
+    /**
+     * Noisy answer of a rectangle: the sum of the noisy counts of the leaves
+     * that QuadTree.search would pick for it. Node bounds are halved on the
+     * way down from the root exactly as the builds do.
+     *
+     * @param {double[]} rec Lower corner of the rectangle.
+     * @param {double} w Width of the rectangle.
+     * @param {double} h Height of the rectangle.
+     */
+    public double count(double[] rec, double w, double h) {
+        //每层最多压入3个兄弟结点，栈深不超过3*层数+1
+        int cap = 3 * levels + 4;
+        int[] id = new int[cap];
+        double[] nx = new double[cap];
+        double[] ny = new double[cap];
+        double[] nw = new double[cap];
+        double[] nh = new double[cap];
+        int top = 0;
+        id[0] = 0;
+        nx[0] = xmin;
+        ny[0] = ymin;
+        nw[0] = this.w;
+        nh[0] = this.h;
+        top++;
+        double sum = 0;
+        while (top > 0) {
+            top--;
+            int i = id[top];
+            double x = nx[top];
+            double y = ny[top];
+            double cw = nw[top];
+            double ch = nh[top];
+            int first = getFirstChild(i);
+            if (first < 0) {
+                if (QuadTree.nodeSearch(x, y, cw, ch, rec, w, h)) {
+                    sum += getNoisyCount(i);
+                }
+            } else if (QuadTree.overlaps(x, y, cw, ch, rec, w, h)) {
+                double hw = cw / 2;
+                double hh = ch / 2;
+                //子结点顺序为nw,ne,sw,se
+                for (int q = 3; q >= 0; q--) {
+                    id[top] = first + q;
+                    nx[top] = (q & 1) == 0 ? x : x + hw;
+                    ny[top] = (q & 2) == 0 ? y : y + hh;
+                    nw[top] = hw;
+                    nh[top] = hh;
+                    top++;
+                }
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Same as QuadTree.rangeCount: nodes inside the rectangle answer with
+     * their own noisy count, leaves cut by its boundary with the share of
+     * their area inside it, and only the cut pointer nodes are descended.
+     */
+    public double rangeCount(double[] rec, double w, double h) {
+        int cap = 3 * levels + 4;
+        int[] id = new int[cap];
+        double[] nx = new double[cap];
+        double[] ny = new double[cap];
+        double[] nw = new double[cap];
+        double[] nh = new double[cap];
+        int top = 0;
+        id[0] = 0;
+        nx[0] = xmin;
+        ny[0] = ymin;
+        nw[0] = this.w;
+        nh[0] = this.h;
+        top++;
+        double sum = 0;
+        while (top > 0) {
+            top--;
+            int i = id[top];
+            double x = nx[top];
+            double y = ny[top];
+            double cw = nw[top];
+            double ch = nh[top];
+            double part = QuadTree.coverage(x, y, cw, ch, rec, w, h);
+            if (part == 0) {
+                continue;
+            }
+            int first = getFirstChild(i);
+            if (part == 1 || first < 0) {
+                sum += part * getNoisyCount(i);
+            } else {
+                double hw = cw / 2;
+                double hh = ch / 2;
+                for (int q = 3; q >= 0; q--) {
+                    id[top] = first + q;
+                    nx[top] = (q & 1) == 0 ? x : x + hw;
+                    ny[top] = (q & 2) == 0 ? y : y + hh;
+                    nw[top] = hw;
+                    nh[top] = hh;
+                    top++;
+                }
+            }
+        }
+        return sum;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getLevels() {
+        return levels;
+    }
+
+    public double getXmin() {
+        return xmin;
+    }
+
+    public double getYmin() {
+        return ymin;
+    }
+
+    public double getW() {
+        return w;
+    }
+
+    public double getH() {
+        return h;
+    }
+}
@@ -0,0 +1,59 @@
+package main;
+
+/**
+ * Reusable working space for the iterative leaf search. It holds the
+ * traversal stack and the matching leaves; both only grow, so once they are
+ * large enough a search allocates nothing. A buffer must not be shared
+ * between threads.
+ */
+public class SearchBuffer<T> {
+
+    Node<T>[] stack;
+    private Node<T>[] leaves;
+    private int size;
+
+    public SearchBuffer() {
+        this.stack = newArray(64);
+        this.leaves = newArray(64);
+    }
+
+    /**
+     * @return {int} The number of leaves found by the last search.
+     */
+    public int size() {
+        return size;
+    }
+
+    public Node<T> getLeaf(int i) {
+        return leaves[i];
+    }
+
+    void clear() {
+        for (int i = 0; i < size; i++) {
+            leaves[i] = null;
+        }
+        size = 0;
+    }
+
+    void add(Node<T> leaf) {
+        if (size == leaves.length) {
+            Node<T>[] grown = newArray(2 * size);
+            System.arraycopy(leaves, 0, grown, 0, size);
+            leaves = grown;
+        }
+        leaves[size++] = leaf;
+    }
+
+    Node<T>[] growStack() {
+        Node<T>[] grown = newArray(2 * stack.length);
+        System.arraycopy(stack, 0, grown, 0, stack.length);
+        stack = grown;
+        return grown;
+    }
+
+    //数组里只放Node<T>，转换是安全的
+    @SuppressWarnings("unchecked")
+    private static <T> Node<T>[] newArray(int n) {
+        return (Node<T>[]) new Node<?>[n];
+    }
+}
@@ -0,0 +1,420 @@
+package main;
+
+/**
+ * Incremental ingestion into a private tree. Point batches are routed into
+ * the existing partition and update the true counts along their paths
+ * (QuadTree.addPoint / removePoint); nothing is released until publish is
+ * called.
+ * <p/>
+ * Every decision taken from the data goes through the Laplace mechanism
+ * with scale sensitive / epsilon. The split test of a node at depth d adds
+ * Lap(0, sensitive / (ep_d * lambda)) to each of its four quadrant counts and
+ * runs the uniformity test (Node.uniform) on those noisy counts alone.
+ * restructure first asks every node above the height whether its count
+ * moved materially since its last test, on the count change plus
+ * Lap(0, sensitive / (ep_d * lambda)): the noisy change must reach minChange
+ * and fraction of the node's last released count. Only those nodes are
+ * tested again. A leaf that fails the test is split (its points go to four
+ * new children with epsilon * lambda, which are tested in turn while the
+ * height allows), a pointer node whose children now look uniform is merged
+ * back into a leaf. Leaves that keep only their count cannot be split, since
+ * the points are not known.
+ * <p/>
+ * Budget, under sequential composition across levels and parallel
+ * composition within a level (the nodes of a level are disjoint): the split
+ * tests of a whole build cost structureCost, the sum of ep_d * lambda over
+ * the levels above the height. A restructure round costs twice that, once
+ * for the materiality test and once for the split tests, and is charged up
+ * front whatever it finds. A release adds Lap(0, sensitive / ep) to every
+ * node and costs the largest sum of node epsilons on a root-to-leaf path.
+ * All of it goes through the PrivacyAccountant.
+ */
+public class StreamingTree<T> {
+
+    private final QuadTree<T> tree;
+    private final int height;
+    private final double lambda;
+    private final double theta;
+    private final double sensitive;
+    private final PrivacyAccountant accountant;
+    private double fraction = 0.1;
+    private int minChange = 10;
+    private int releases;
+
+    /**
+     * Streams into a tree built elsewhere. The split tests of QTSC draw
+     * their noise through the legacy Node.getNoise mapping, which does not
+     * match structureCost, so the caller states what the build spent.
+     *
+     * @param {QuadTree} tree A built tree.
+     * @param {int} height The height the tree was built with.
+     * @param {double} buildCost The epsilon the build of tree spent.
+     * @param {PrivacyAccountant} accountant Charged buildCost right away.
+     */
+    public StreamingTree(QuadTree<T> tree, int height, double lambda, double theta, double sensitive, double buildCost,
+            PrivacyAccountant accountant) {
+        this(tree, height, lambda, theta, sensitive, accountant);
+        accountant.charge("build", buildCost);
+        markEvaluated(tree.getRootNode());
+    }
+
+    private StreamingTree(QuadTree<T> tree, int height, double lambda, double theta, double sensitive, PrivacyAccountant accountant) {
+        this.tree = tree;
+        this.height = height;
+        this.lambda = lambda;
+        this.theta = theta;
+        this.sensitive = sensitive;
+        this.accountant = accountant;
+    }
+
+    /**
+     * Builds the initial partition of dataset with the stream's own split
+     * test and charges it structureCost. The leaves keep their points, so
+     * they can be split and points can be removed later.
+     *
+     * @param {double} ep Epsilon of the root.
+     * @param {int[]} dataset The points, x,y pairs from index 1.
+     */
+    public static <T> StreamingTree<T> build(double ep, double xmin, double ymin, double w, double h, int[] dataset, int height,
+            double lambda, double theta, double sensitive, PrivacyAccountant accountant) {
+        QuadTree<T> tree = new QuadTree<T>(ep, xmin, ymin, w, h);
+        tree.setCountOnly(true);
+        tree.setKeepLeafPoints(true);
+        StreamingTree<T> stream = new StreamingTree<T>(tree, height, lambda, theta, sensitive, accountant);
+        accountant.charge("build", stream.structureCost());
+        int[] xy = new int[dataset.length - 1];
+        System.arraycopy(dataset, 1, xy, 0, xy.length);
+        stream.add(xy);
+        stream.grow(tree.getRootNode(), 0);
+        return stream;
+    }
+
+    private void markEvaluated(Node<T> node) {
+        node.setEvaluatedCount(node.getCount());
+        if (node.getNodeType() == NodeType.POINTER) {
+            markEvaluated(node.getNw());
+            markEvaluated(node.getNe());
+            markEvaluated(node.getSw());
+            markEvaluated(node.getSe());
+        }
+    }
+
+    /**
+     * Sets when a count change is material: the noisy change is at least
+     * minChange points and at least fraction of the node's last released
+     * noisy count.
+     */
+    public synchronized void setMaterialChange(double fraction, int minChange) {
+        this.fraction = fraction;
+        this.minChange = Math.max(1, minChange);
+    }
+
+    /**
+     * Adds a batch of points. Points outside the root are skipped.
+     *
+     * @param {int[]} xy The points as x0,y0,x1,y1,...
+     * @return {int} The number of points added.
+     */
+    public synchronized int add(int[] xy) {
+        Node<T> root = tree.getRootNode();
+        int n = 0;
+        for (int i = 0; i + 1 < xy.length; i += 2) {
+            int x = xy[i];
+            int y = xy[i + 1];
+            if (x >= root.getX() && x < root.getX() + root.getW() && y >= root.getY() && y < root.getY() + root.getH()) {
+                tree.addPoint(x, y);
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Removes a batch of points, e.g. ones that expired from a window. Only
+     * points stored in a leaf can be removed, so a tree whose leaves keep
+     * only counts (count-only without keepLeafPoints) accepts no removals.
+     *
+     * @param {int[]} xy The points as x0,y0,x1,y1,...
+     * @return {int} The number of points that were found and removed.
+     */
+    public synchronized int remove(int[] xy) {
+        int n = 0;
+        for (int i = 0; i + 1 < xy.length; i += 2) {
+            if (tree.removePoint(xy[i], xy[i + 1]) != null) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Runs the materiality test at every node above the height and the
+     * split test at the nodes that changed. The round is charged before any
+     * count is read; nothing is tested when the remaining budget cannot pay
+     * for it.
+     *
+     * @return {int} The number of nodes tested.
+     */
+    public synchronized int restructure() {
+        return restructure(0);
+    }
+
+    //reserve为这一轮之后还要留下的预算；是否进行只取决于预算，不看数据
+    private int restructure(double reserve) {
+        if (!accountant.canAfford(roundCost() + reserve)) {
+            return 0;
+        }
+        accountant.charge("restructure", roundCost());
+        return restructure(tree.getRootNode(), 0);
+    }
+
+    //一轮重新划分的花费：判断计数是否变化明显一次，分裂判断一次
+    public double roundCost() {
+        return 2 * structureCost();
+    }
+
+    //计数的变化加上噪声后与阈值比较；阈值用上次发布的噪声计数，不用真实计数
+    private boolean material(Node<T> node) {
+        double change = node.getCount() - node.getEvaluatedCount() + splitNoise(node);
+        return Math.abs(change) >= Math.max(minChange, fraction * Math.max(0, node.getNoisyCount()));
+    }
+
+    //只有在保存了点时叶子才能分裂，这由树的设置决定，与数据无关
+    private boolean leavesKeepPoints() {
+        return !tree.isCountOnly() || tree.isKeepLeafPoints();
+    }
+
+    private int restructure(Node<T> node, int depth) {
+        if (depth >= height) {
+            return 0;
+        }
+        boolean pointer = node.getNodeType() == NodeType.POINTER;
+        if ((pointer || leavesKeepPoints()) && material(node)) {
+            if (!pointer) {
+                return grow(node, depth);
+            }
+            node.setEvaluatedCount(node.getCount());
+            if (uniform(node, node.getNw().getCount(), node.getNe().getCount(), node.getSw().getCount(), node.getSe().getCount())) {
+                merge(node);
+                return 1;
+            }
+            return 1 + children(node, depth);
+        }
+        return pointer ? children(node, depth) : 0;
+    }
+
+    private int children(Node<T> node, int depth) {
+        int tested = 0;
+        tested += restructure(node.getNe(), depth + 1);
+        tested += restructure(node.getNw(), depth + 1);
+        tested += restructure(node.getSe(), depth + 1);
+        tested += restructure(node.getSw(), depth + 1);
+        return tested;
+    }
+
+    //对保存了点的叶子做分裂判断，分裂后接着判断新的子结点，直到高度用完
+    private int grow(Node<T> node, int depth) {
+        node.setEvaluatedCount(node.getCount());
+        if (depth >= height) {
+            return 0;
+        }
+        double mx = node.getX() + node.getW() / 2;
+        double my = node.getY() + node.getH() / 2;
+        int[] q = new int[4];
+        for (int i = 0; i < node.getCount() && node.hasPoints(); i++) {
+            q[quadrant(node.getPointX(i), node.getPointY(i), mx, my)]++;
+        }
+        if (uniform(node, q[0], q[1], q[2], q[3])) {
+            return 1;
+        }
+        split(node, mx, my);
+        int tested = 1;
+        tested += grow(node.getNe(), depth + 1);
+        tested += grow(node.getNw(), depth + 1);
+        tested += grow(node.getSe(), depth + 1);
+        tested += grow(node.getSw(), depth + 1);
+        return tested;
+    }
+
+    //四个象限的计数各加上子结点预算的噪声，只用噪声计数判断是否均匀
+    private boolean uniform(Node<T> node, int nw, int ne, int sw, int se) {
+        double a = nw + splitNoise(node);
+        double b = ne + splitNoise(node);
+        double c = sw + splitNoise(node);
+        double d = se + splitNoise(node);
+        boolean uniform = Node.uniform(a + b + c + d, a, b, c, d, 0, theta);
+        trialSplit(uniform);
+        return uniform;
+    }
+
+    //子结点的预算epsilon*lambda对应的噪声
+    private double splitNoise(Node<T> node) {
+        return tree.laplace(sensitive / (node.getEp() * lambda));
+    }
+
+    private void trialSplit(boolean rejected) {
+        Metrics m = tree.getMetrics();
+        if (m != null) {
+            m.trialSplit(rejected);
+        }
+    }
+
+    //0=nw,1=ne,2=sw,3=se
+    private static int quadrant(double x, double y, double mx, double my) {
+        return (y < my ? 0 : 2) + (x < mx ? 0 : 1);
+    }
+
+    //把叶子的点分给四个新的子结点，叶子变成只保留计数的内部结点
+    private void split(Node<T> node, double mx, double my) {
+        double x = node.getX();
+        double y = node.getY();
+        double hw = node.getW() / 2;
+        double hh = node.getH() / 2;
+        double ep = node.getEp() * lambda;
+        node.setNw(new Node<T>(ep, x, y, hw, hh, node));
+        node.setNe(new Node<T>(ep, x + hw, y, hw, hh, node));
+        node.setSw(new Node<T>(ep, x, y + hh, hw, hh, node));
+        node.setSe(new Node<T>(ep, x + hw, y + hh, hw, hh, node));
+        for (int i = 0; i < node.getCount(); i++) {
+            double px = node.getPointX(i);
+            double py = node.getPointY(i);
+            switch (quadrant(px, py, mx, my)) {
+                case 0:
+                    node.getNw().addPoint(px, py, node.getPointValue(i));
+                    break;
+                case 1:
+                    node.getNe().addPoint(px, py, node.getPointValue(i));
+                    break;
+                case 2:
+                    node.getSw().addPoint(px, py, node.getPointValue(i));
+                    break;
+                default:
+                    node.getSe().addPoint(px, py, node.getPointValue(i));
+                    break;
+            }
+        }
+        node.setCount(node.getCount());
+        node.setNodeType(NodeType.POINTER);
+        Metrics m = tree.getMetrics();
+        if (m != null) {
+            m.nodesCreated(4);
+        }
+    }
+
+    //把子树合并成一个叶子：所有叶子都保存了点时叶子保留这些点，否则只保留计数
+    private void merge(Node<T> node) {
+        if (keepsPoints(node)) {
+            node.setPoint(null);
+            gather(node, node.getNw());
+            gather(node, node.getNe());
+            gather(node, node.getSw());
+            gather(node, node.getSe());
+        } else {
+            node.setCount(node.getCount());
+        }
+        node.setNodeType(NodeType.EMPTY);
+        node.setNw(null);
+        node.setNe(null);
+        node.setSw(null);
+        node.setSe(null);
+    }
+
+    private boolean keepsPoints(Node<T> node) {
+        if (node.getNodeType() == NodeType.POINTER) {
+            return keepsPoints(node.getNw()) && keepsPoints(node.getNe()) && keepsPoints(node.getSw()) && keepsPoints(node.getSe());
+        }
+        return node.getCount() == 0 || node.hasPoints();
+    }
+
+    private void gather(Node<T> into, Node<T> node) {
+        if (node.getNodeType() == NodeType.POINTER) {
+            gather(into, node.getNw());
+            gather(into, node.getNe());
+            gather(into, node.getSw());
+            gather(into, node.getSe());
+        } else {
+            for (int i = 0; i < node.getCount(); i++) {
+                into.addPoint(node.getPointX(i), node.getPointY(i), node.getPointValue(i));
+            }
+        }
+    }
+
+    /**
+     * Restructures if the budget still covers a release afterwards, then
+     * gives every node a fresh noisy count, count + Lap(0, sensitive / ep),
+     * and returns a copy of the tree that later batches do not change.
+     *
+     * @return {LinearQuadTree} The released snapshot.
+     * @throws QuadTreeException If the budget cannot pay for the release.
+     */
+    public synchronized LinearQuadTree publish() {
+        if (!accountant.canAfford(releaseCost())) {
+            throw new QuadTreeException("Privacy budget exceeded : release needs " + releaseCost() + ", remaining " + accountant.getRemaining());
+        }
+        //重新划分后路径可能变长，只有在留得下最长路径的发布花费时才重新划分
+        restructure(maxReleaseCost());
+        accountant.charge("release " + (releases + 1), releaseCost());
+        release(tree.getRootNode());
+        tree.markReleased();
+        releases++;
+        return LinearQuadTree.fromTree(tree);
+    }
+
+    //每次发布都重新取噪声，不按结点编号，否则两次发布的噪声相同
+    private void release(Node<T> node) {
+        node.setNoisyCount(node.getCount() + tree.laplace(sensitive / node.getEp()));
+        if (node.getNodeType() == NodeType.POINTER) {
+            release(node.getNw());
+            release(node.getNe());
+            release(node.getSw());
+            release(node.getSe());
+        }
+    }
+
+    //一次完整的分裂判断的花费：高度以内每层的判断用子结点的epsilon，每层之和
+    public double structureCost() {
+        double cost = 0;
+        double ep = tree.getRootNode().getEp();
+        for (int d = 0; d < height; d++) {
+            ep *= lambda;
+            cost += ep;
+        }
+        return cost;
+    }
+
+    //高度用满时一次发布的花费
+    private double maxReleaseCost() {
+        double cost = 0;
+        double ep = tree.getRootNode().getEp();
+        for (int d = 0; d <= height; d++) {
+            cost += ep;
+            ep *= lambda;
+        }
+        return cost;
+    }
+
+    //一次发布的花费：根到叶子路径上结点epsilon之和的最大值
+    public synchronized double releaseCost() {
+        return pathCost(tree.getRootNode());
+    }
+
+    private double pathCost(Node<T> node) {
+        if (node.getNodeType() != NodeType.POINTER) {
+            return node.getEp();
+        }
+        return node.getEp() + Math.max(Math.max(pathCost(node.getNw()), pathCost(node.getNe())),
+                Math.max(pathCost(node.getSw()), pathCost(node.getSe())));
+    }
+
+    public QuadTree<T> getTree() {
+        return tree;
+    }
+
+    public PrivacyAccountant getAccountant() {
+        return accountant;
+    }
+
+    public int getReleases() {
+        return releases;
+    }
+}
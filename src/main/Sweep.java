@@ -0,0 +1,173 @@
+package main;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the query error experiment over every combination of ep, theta,
+ * lambda and treeH. It reads the same keys as Experiment, but these four may
+ * be comma separated lists. The true counts are computed once into a
+ * CountPyramid of the largest treeH. Each setting then only redoes the split
+ * decisions and the noise on top of that pyramid. Settings run concurrently
+ * on a fixed thread pool (key threads, default one per core) and the results
+ * come back as one table.
+ * <p/>
+ * Usage: java main.Sweep [config.properties]
+ */
+public class Sweep {
+
+    private final Properties config;
+    private final List<double[]> rows = new ArrayList<double[]>();
+
+    public Sweep(Properties config) {
+        this.config = config;
+    }
+
+    public static Sweep load(File file) throws IOException {
+        Properties config = new Properties();
+        if (file != null && file.exists()) {
+            InputStream in = new FileInputStream(file);
+            try {
+                config.load(in);
+            } finally {
+                in.close();
+            }
+        }
+        return new Sweep(config);
+    }
+
+    /**
+     * Runs every setting.
+     *
+     * @return {List<double[]>} One row per setting: ep, theta, lambda, treeH,
+     *         then the mean relative error of each query size.
+     */
+    public List<double[]> run() throws IOException, InterruptedException, ExecutionException {
+        final int[] dataset = DatasetLoader.load(new File(config.getProperty("data", "eastwe.txt")));
+        final double xmin = getDouble("xmin", 520000);
+        final double ymin = getDouble("ymin", 170000);
+        final double w = getDouble("w", 20480);
+        final double h = getDouble("h", 20480);
+        final double sensitive = getDouble("sensitive", 1);
+        final double a = getDouble("a", 1);
+        final int queries = getInt("queries", 10);
+        final int sizes = getInt("sizes", 5);
+        final double row = getDouble("row", 100);
+        final double total = getDouble("total", 2000);
+        final String seed = config.getProperty("seed");
+        double[] eps = getList("ep", "1");
+        double[] thetas = getList("theta", "0.5");
+        double[] lambdas = getList("lambda", "2");
+        double[] heights = getList("treeH", "2");
+        int maxH = 0;
+        for (double treeH : heights) {
+            maxH = Math.max(maxH, (int) treeH);
+        }
+        //真实计数只算一次
+        final CountPyramid pyramid = new CountPyramid(xmin, ymin, w, h, maxH, dataset);
+        final ExactOracle oracle = new ExactOracle(dataset);
+        int threads = getInt("threads", Runtime.getRuntime().availableProcessors());
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<double[]>> futures = new ArrayList<Future<double[]>>();
+            for (final double ep : eps) {
+                for (final double theta : thetas) {
+                    for (final double lambda : lambdas) {
+                        for (final double treeH : heights) {
+                            futures.add(pool.submit(new Callable<double[]>() {
+                                @Override
+                                public double[] call() {
+                                    Global global = new Global(xmin, ymin, w, h, (int) treeH, ep, sensitive, theta, lambda, a, dataset);
+                                    QuadTree<String> tree = new QuadTree<String>(global.getEp1(), xmin, ymin, w, h);
+                                    if (seed != null) {
+                                        tree.setNoiseSource(new LaplaceNoise(Long.parseLong(seed.trim())));
+                                    }
+                                    tree.QTSCCounts(tree.getRootNode(), (int) treeH, lambda, pyramid, theta, sensitive);
+                                    Experiment.release(tree, global);
+                                    double[] error = Experiment.evaluate(tree, global, oracle, queries, sizes, row, total);
+                                    double[] result = new double[4 + error.length];
+                                    result[0] = ep;
+                                    result[1] = theta;
+                                    result[2] = lambda;
+                                    result[3] = treeH;
+                                    System.arraycopy(error, 0, result, 4, error.length);
+                                    return result;
+                                }
+                            }));
+                        }
+                    }
+                }
+            }
+            rows.clear();
+            for (Future<double[]> future : futures) {
+                rows.add(future.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return rows;
+    }
+
+    //制表符分隔：ep,theta,lambda,treeH,各查询边长的平均相对误差
+    public void write(PrintWriter out) {
+        out.print("ep\ttheta\tlambda\ttreeH");
+        int sizes = rows.isEmpty() ? 0 : rows.get(0).length - 4;
+        for (int k = 1; k <= sizes; k++) {
+            out.print("\terror" + k);
+        }
+        out.println();
+        for (double[] row : rows) {
+            out.print(row[0] + "\t" + row[1] + "\t" + row[2] + "\t" + (int) row[3]);
+            for (int k = 4; k < row.length; k++) {
+                out.print("\t" + row[k]);
+            }
+            out.println();
+        }
+        out.flush();
+    }
+
+    private double[] getList(String key, String def) {
+        String[] split = config.getProperty(key, def).split(",");
+        double[] values = new double[split.length];
+        for (int i = 0; i < split.length; i++) {
+            values[i] = Double.parseDouble(split[i].trim());
+        }
+        return values;
+    }
+
+    private double getDouble(String key, double def) {
+        String value = config.getProperty(key);
+        return value == null ? def : Double.parseDouble(value.trim());
+    }
+
+    private int getInt(String key, int def) {
+        String value = config.getProperty(key);
+        return value == null ? def : Integer.parseInt(value.trim());
+    }
+
+    public static void main(String[] args) throws Exception {
+        Sweep sweep = load(new File(args.length > 0 ? args[0] : "experiment.properties"));
+        sweep.run();
+        String output = sweep.config.getProperty("output");
+        if (output != null) {
+            PrintWriter out = new PrintWriter(output, "UTF-8");
+            try {
+                sweep.write(out);
+            } finally {
+                out.close();
+            }
+        }
+        sweep.write(new PrintWriter(System.out));
+    }
+}
@@ -6,8 +6,12 @@ import java.util.List;
 import javax.swing.*;
 import java.awt.*;
 public class main {
-	public static void main(String[] args) {
-		
+	public static void main(String[] args) throws IOException {
+		//带参数时不开窗口，直接按配置文件跑实验
+		if(args.length>0){
+			Experiment.main(args);
+			return;
+		}
 		EventQueue.invokeLater(new Runnable() {
             @Override
             public void run() {
@@ -42,14 +46,32 @@ public class main {
             setLocationRelativeTo(null);
 
             // 设置窗口的内容面板
-            MyPanel panel = new MyPanel(this);
+            final MyPanel panel = new MyPanel(this);
             setContentPane(panel);
+
+            // 在后台线程里跑一次实验, 算完后交给面板绘制
+            new SwingWorker<double[], Void>() {
+                @Override
+                protected double[] doInBackground() throws Exception {
+                    return Experiment.load(new File("experiment.properties")).run();
+                }
+
+                @Override
+                protected void done() {
+                    try {
+                        panel.setError(get());
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            }.execute();
         }
 
     }
 	public static class MyPanel extends JPanel {
 
         private MyFrame frame;
+        private double[] error;
 
         public MyPanel(MyFrame frame) {
             super();
@@ -57,59 +79,20 @@ public class main {
         }
 
         /**
-         * 绘制面板的内容: 创建 JPanel 后会调用一次该方法绘制内容,
-         * 之后如果数据改变需要重新绘制, 可调用 updateUI() 方法触发
-         * 系统再次调用该方法绘制更新 JPanel 的内容。
+         * 绘制面板的内容: 只画已经算好的误差数组, 重绘时不会重新建树。
+         * 误差算好后调用 setError() 触发重绘。
          */
         @Override
         protected void paintComponent(Graphics g) {
             super.paintComponent(g);
-          //load data
-    		File file = new File("/Users/taohuadao/Documents/WFE/QuadTree1/eastwe.txt");
-    		String[] split=txt2String(file).split("\t");
-    		int[] coordinate=new int[split.length];
-            for(int i=1;i<split.length;i++){
-            	coordinate[i]=Integer.valueOf(split[i],10);
+            if(error!=null){
+            	drawLine(g,error);
             }
-            //xmin,ymin,w,h,treeh,ep,sensitive,theta,dataset
-    		Global global=new Global(520000,170000,20480,20480,2,1,1,0.5,2,coordinate);
-    		double ep=global.getEp();
-    		double sensitive=global.getSensitive();
-    		double theta=global.getTheta();
-    		double xmin=global.getXmin();
-    		double ymin=global.getYmin();
-    		double w=global.getW();
-    		double h=global.getH();
-    		double lambda=global.getLambda();
-    		double perw=global.getQueryw();
-    		double perh=global.getQueryh();
-    		int treeH=global.getTreeH();
-    		int[] dataset=global.getData();
-    		//构建树
-    		QuadTree<String> tree=new QuadTree<String>(ep,xmin,ymin,w,h);
-    		tree.QTSC(tree,tree.getRootNode(),treeH,lambda,dataset,theta,sensitive);
-    		double[] error={0,0,0,0,0};
-    		//在不同的查询范围中循环
-    		for(int k=0;k<error.length;k++){
-    			double queryw=(k+1)*perw;
-        		double queryh=(k+1)*perh;
-        		//生成查询区域
-        		List<double[]> recs=tree.query(10,xmin,ymin,queryw,queryh,w,h);
-        		List<double[]> count=tree.search(recs, queryw, queryh,sensitive);
-	    		double[] re={0,0,0,0,0,0,0,0,0,0};
-	    		for(int j=0;j<10;j++){
-		    		//查询结果，参数，真实结果，总值
-	    			double RE=global.re(count.get(j)[1],100,count.get(j)[0],2000);
-	    			re[j]=RE;
-	    		}
-	    		double sum=0;
-	    		for(int i=0;i<re.length;i++){
-	    			sum+=re[i];
-	    		}
-	    		sum/=re.length;
-	    		error[k]=sum;   
-    		}
-    		drawLine(g,error);
+        }
+
+        public void setError(double[] error) {
+            this.error = error;
+            repaint();
         }
         private void drawLine(Graphics g, double[] res) {
             Graphics2D g2d = (Graphics2D) g.create();